@@ -0,0 +1,61 @@
+package org.firstinspires.ftc.teamcode;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Random;
+
+/**
+ * The field-centric mecanum math CenterStageTeleOp runs every loop, with random stick positions
+ * and headings.
+ */
+@State(Scope.Thread)
+public class MecanumBenchmark {
+
+    static final int INPUTS = 1024;
+
+    double[] sticks = new double[INPUTS * 3];
+    double[] headings = new double[INPUTS];
+    double[] rotated = new double[2];
+    double[] wheelPowers = new double[4];
+    int index = 0;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        Random random = new Random(11109);
+        for (int i = 0; i < sticks.length; i++) {
+            sticks[i] = random.nextDouble() * 2 - 1;
+        }
+        for (int i = 0; i < INPUTS; i++) {
+            headings[i] = random.nextDouble() * 2 * Math.PI - Math.PI;
+        }
+    }
+
+    @Benchmark
+    public double[] fieldCentric() {
+        index = (index + 1) & (INPUTS - 1);
+        MecanumKinematics.fieldCentric(sticks[index * 3], sticks[index * 3 + 1], headings[index], rotated);
+        return rotated;
+    }
+
+    @Benchmark
+    public double[] wheelPowers() {
+        index = (index + 1) & (INPUTS - 1);
+        MecanumKinematics.wheelPowers(sticks[index * 3 + 1], sticks[index * 3], sticks[index * 3 + 2], wheelPowers);
+        return wheelPowers;
+    }
+
+    /**
+     * Everything the TeleOp does to turn sticks and a heading into wheel powers.
+     */
+    @Benchmark
+    public double[] teleOpDrive() {
+        index = (index + 1) & (INPUTS - 1);
+        MecanumKinematics.fieldCentric(sticks[index * 3], sticks[index * 3 + 1], headings[index], rotated);
+        MecanumKinematics.wheelPowers(rotated[1], rotated[0], sticks[index * 3 + 2], wheelPowers);
+        return wheelPowers;
+    }
+}
@@ -0,0 +1,68 @@
+package org.firstinspires.ftc.teamcode;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Random;
+
+/**
+ * The per-cycle math from CenterStageAutonomous: getSteeringCorrection() and moveRobot().
+ * The inputs cycle through a table of random headings so the JIT can't fold them into constants.
+ */
+@State(Scope.Thread)
+public class SteeringBenchmark {
+
+    static final double P_DRIVE_GAIN = DriveControl.DRIVE_KP;
+    static final double CYCLE_SECONDS = 0.02;
+
+    static final int INPUTS = 1024;
+
+    double[] targetHeadings = new double[INPUTS];
+    double[] robotHeadings = new double[INPUTS];
+    double[] driveSpeeds = new double[INPUTS];
+    double[] yawRates = new double[INPUTS];
+    PidfController turnController = DriveControl.turnController();
+    double[] wheelSpeeds = new double[2];
+    int index = 0;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        Random random = new Random(11109);
+        for (int i = 0; i < INPUTS; i++) {
+            targetHeadings[i] = random.nextDouble() * 360 - 180;
+            robotHeadings[i] = random.nextDouble() * 720 - 360;
+            driveSpeeds[i] = random.nextDouble() * 2 - 1;
+            yawRates[i] = random.nextDouble() * 400 - 200;
+        }
+    }
+
+    private int next() {
+        index = (index + 1) & (INPUTS - 1);
+        return index;
+    }
+
+    @Benchmark
+    public double steeringCorrection() {
+        int i = next();
+        double error = DriveControl.headingError(targetHeadings[i], robotHeadings[i]);
+        return DriveControl.steeringCorrection(error, P_DRIVE_GAIN);
+    }
+
+    @Benchmark
+    public double pidfTurn() {
+        int i = next();
+        double error = DriveControl.headingError(targetHeadings[i], robotHeadings[i]);
+        return turnController.update(error, yawRates[i], CYCLE_SECONDS);
+    }
+
+    @Benchmark
+    public double[] moveRobot() {
+        int i = next();
+        double turn = DriveControl.steeringCorrection(targetHeadings[i], P_DRIVE_GAIN);
+        DriveControl.tankPowers(driveSpeeds[i], turn, wheelSpeeds);
+        return wheelSpeeds;
+    }
+}
@@ -0,0 +1,71 @@
+package org.firstinspires.ftc.teamcode;
+
+import org.opencv.core.Core;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.Rect;
+import org.opencv.core.Scalar;
+import org.opencv.imgproc.Imgproc;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * FirstVisionProcessor.processFrame() on a synthetic 640x480 frame: grey mat noise with a
+ * saturated "team prop" on one of the spike marks.
+ */
+@State(Scope.Thread)
+public class VisionBenchmark {
+
+    // Same as FirstVisionProcessor
+    static final Rect RECT_LEFT = new Rect(30, 100, 80, 80);
+    static final Rect RECT_MIDDLE = new Rect(275, 50, 80, 80);
+    static final Rect RECT_RIGHT = new Rect(505, 100, 80, 80);
+
+    @Param({"LEFT", "MIDDLE", "RIGHT"})
+    public String propOn;
+
+    Mat frame;
+    Mat hsv;
+    SpikeMarkDetector detector;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        nu.pattern.OpenCV.loadLocally();
+
+        frame = new Mat(480, 640, CvType.CV_8UC3);
+        Core.randu(frame, 90, 130);   // roughly grey, low saturation
+        Rect prop = propOn.equals("LEFT") ? RECT_LEFT : propOn.equals("MIDDLE") ? RECT_MIDDLE : RECT_RIGHT;
+        Imgproc.rectangle(frame, prop, new Scalar(20, 40, 220), -1);   // a blue prop
+        hsv = new Mat();
+        Imgproc.cvtColor(frame, hsv, Imgproc.COLOR_RGB2HSV);   // for avgSaturation()
+        detector = new SpikeMarkDetector(RECT_LEFT, RECT_MIDDLE, RECT_RIGHT);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        frame.release();
+        hsv.release();
+        detector.release();
+    }
+
+    @Benchmark
+    public int processFrame() {
+        return SpikeMarkDetector.detect(frame, hsv, RECT_LEFT, RECT_MIDDLE, RECT_RIGHT);
+    }
+
+    // What FirstVisionProcessor does by default: only the three rectangles get converted
+    @Benchmark
+    public int processFrameRoiOnly() {
+        return detector.detect(frame);
+    }
+
+    @Benchmark
+    public double avgSaturation() {
+        return SpikeMarkDetector.getAvgSaturation(hsv, RECT_MIDDLE);
+    }
+}
@@ -11,11 +11,11 @@ public class BucketServo {
         bucketServo.setServoPosition(0);
     }
 
-    public void loop() {
-        if (SwingArm.armMotor.getCurrentPosition() < 1500) {
+    public void loop(RobotState state) {
+        if (state.armPosition < 1500) {
             bucketServo.setServoPosition(0.2);
         } else {
-            bucketServo.setServoPosition(((double)(SwingArm.armMotor.getCurrentPosition() - 1500) / 1200));
+            bucketServo.setServoPosition(((double)(state.armPosition - 1500) / 1200));
         }
     }
 }
\ No newline at end of file
@@ -0,0 +1,304 @@
+package org.firstinspires.ftc.teamcode;
+
+import com.qualcomm.robotcore.hardware.DcMotor;
+import com.qualcomm.robotcore.hardware.DcMotorController;
+import com.qualcomm.robotcore.hardware.DcMotorEx;
+import com.qualcomm.robotcore.hardware.PIDFCoefficients;
+import com.qualcomm.robotcore.hardware.configuration.typecontainers.MotorConfigurationType;
+
+/**
+ * A DcMotor that remembers the last mode, power and target position it sent to the hub, and
+ * drops writes that wouldn't change anything. Every write to a motor is its own USB transaction
+ * with the Lynx module, so loops that set the same mode or power every cycle waste a lot of time.
+ *
+ * It can be used anywhere a DcMotor is used:
+ *   DcMotor arm = new CachingMotor(hardwareMap.get(DcMotorEx.class, "arm"));
+ *
+ * It can also make up for the battery voltage (see setVoltageCompensation()).
+ */
+public class CachingMotor implements DcMotor {
+
+    // Total number of writes skipped by all the motors, for telemetry. Static, so it outlives the
+    // OpMode: call resetTotalWritesSaved() when one starts.
+    private static long totalWritesSaved = 0;
+
+    private final DcMotorEx motor;
+
+    private RunMode lastMode = null;
+    private double lastPower = Double.NaN;
+    private int lastTargetPosition = 0;
+    private boolean hasTargetPosition = false;
+    private ZeroPowerBehavior lastZeroPowerBehavior = null;
+    private Direction lastDirection = null;
+
+    // Power changes smaller than this are not sent. 0 means only exact repeats are dropped.
+    private double powerEpsilon = 0;
+
+    private long writesSent = 0;
+    private long writesSaved = 0;
+
+    // Battery compensation. In the encoder modes it scales the hub's velocity feedforward instead of the power.
+    private VoltageCompensation compensation = null;
+    private PIDFCoefficients baseVelocityPidf = null;
+    private double feedforwardScale = 1;
+    // Only rewrite the hub's coefficients when the scale has moved this much
+    static final double FEEDFORWARD_RESCALE = 0.02;
+
+    public CachingMotor(DcMotorEx motor) {
+        this.motor = motor;
+    }
+
+    public CachingMotor(DcMotorEx motor, double powerEpsilon) {
+        this.motor = motor;
+        this.powerEpsilon = powerEpsilon;
+    }
+
+    /**
+     * @return The motor being wrapped, for anything this class doesn't cover (PIDF coefficients, current draw...).
+     */
+    public DcMotorEx getMotor() {
+        return motor;
+    }
+
+    public void setPowerEpsilon(double powerEpsilon) {
+        this.powerEpsilon = Math.abs(powerEpsilon);
+    }
+
+    /**
+     * Forget everything we remember, so the next write of each kind is always sent.
+     * Use this if something else might have written to the motor behind our back.
+     */
+    public void invalidate() {
+        lastMode = null;
+        lastPower = Double.NaN;
+        hasTargetPosition = false;
+        lastZeroPowerBehavior = null;
+        lastDirection = null;
+    }
+
+    public long getWritesSent() {
+        return writesSent;
+    }
+
+    public long getWritesSaved() {
+        return writesSaved;
+    }
+
+    public static long getTotalWritesSaved() {
+        return totalWritesSaved;
+    }
+
+    public static void resetTotalWritesSaved() {
+        totalWritesSaved = 0;
+    }
+
+    private void saved() {
+        writesSaved++;
+        totalWritesSaved++;
+    }
+
+    /**
+     * Scale powers for the battery voltage. In RUN_WITHOUT_ENCODER the power itself is scaled.
+     * In RUN_USING_ENCODER and RUN_TO_POSITION the power is a speed that the hub's own velocity
+     * loop holds whatever the battery is at, so only the loop's feedforward (F) is scaled, and
+     * only when the voltage has changed enough to matter.
+     *
+     * Reads the motor's velocity PIDF coefficients once, so call it during init.
+     * Pass null to turn it off.
+     */
+    public void setVoltageCompensation(VoltageCompensation compensation) {
+        this.compensation = compensation;
+        if (compensation != null && baseVelocityPidf == null) {
+            baseVelocityPidf = motor.getPIDFCoefficients(RunMode.RUN_USING_ENCODER);
+        }
+    }
+
+    private boolean isClosedLoop() {
+        return lastMode == RunMode.RUN_USING_ENCODER || lastMode == RunMode.RUN_TO_POSITION;
+    }
+
+    private void updateFeedforward() {
+        double scale = compensation.getScale();
+        if (baseVelocityPidf.f == 0 || Math.abs(scale - feedforwardScale) < FEEDFORWARD_RESCALE) return;
+        motor.setPIDFCoefficients(RunMode.RUN_USING_ENCODER, new PIDFCoefficients(baseVelocityPidf.p,
+                baseVelocityPidf.i, baseVelocityPidf.d, baseVelocityPidf.f * scale));
+        feedforwardScale = scale;
+        writesSent++;
+    }
+
+    @Override
+    public void setPower(double power) {
+        if (compensation != null) {
+            if (isClosedLoop()) {
+                updateFeedforward();
+            } else {
+                power = compensation.apply(power);
+            }
+        }
+
+        // Always send a change to exactly zero, even if it's smaller than the epsilon, so the robot stops.
+        boolean stopping = power == 0 && lastPower != 0;
+        if (!Double.isNaN(lastPower) && !stopping && Math.abs(power - lastPower) <= powerEpsilon) {
+            saved();
+            return;
+        }
+        motor.setPower(power);
+        lastPower = power;
+        writesSent++;
+    }
+
+    @Override
+    public double getPower() {
+        // We know what we sent last, so there's no need to ask the hub.
+        return Double.isNaN(lastPower) ? motor.getPower() : lastPower;
+    }
+
+    @Override
+    public void setMode(RunMode mode) {
+        if (mode == lastMode) {
+            saved();
+            return;
+        }
+        motor.setMode(mode);
+        lastMode = mode;
+        writesSent++;
+        // The hub stops the motor when the encoder is reset, so we no longer know its power.
+        if (mode == RunMode.STOP_AND_RESET_ENCODER) lastPower = Double.NaN;
+    }
+
+    @Override
+    public RunMode getMode() {
+        return lastMode == null ? motor.getMode() : lastMode;
+    }
+
+    @Override
+    public void setTargetPosition(int position) {
+        if (hasTargetPosition && position == lastTargetPosition) {
+            saved();
+            return;
+        }
+        motor.setTargetPosition(position);
+        lastTargetPosition = position;
+        hasTargetPosition = true;
+        writesSent++;
+    }
+
+    @Override
+    public int getTargetPosition() {
+        return hasTargetPosition ? lastTargetPosition : motor.getTargetPosition();
+    }
+
+    @Override
+    public void setZeroPowerBehavior(ZeroPowerBehavior zeroPowerBehavior) {
+        if (zeroPowerBehavior == lastZeroPowerBehavior) {
+            saved();
+            return;
+        }
+        motor.setZeroPowerBehavior(zeroPowerBehavior);
+        lastZeroPowerBehavior = zeroPowerBehavior;
+        writesSent++;
+    }
+
+    @Override
+    public ZeroPowerBehavior getZeroPowerBehavior() {
+        return lastZeroPowerBehavior == null ? motor.getZeroPowerBehavior() : lastZeroPowerBehavior;
+    }
+
+    @Override
+    public void setDirection(Direction direction) {
+        if (direction == lastDirection) {
+            saved();
+            return;
+        }
+        motor.setDirection(direction);
+        lastDirection = direction;
+        writesSent++;
+    }
+
+    @Override
+    public Direction getDirection() {
+        return lastDirection == null ? motor.getDirection() : lastDirection;
+    }
+
+    // Everything below is just passed straight through to the motor.
+
+    @Override
+    public int getCurrentPosition() {
+        return motor.getCurrentPosition();
+    }
+
+    /**
+     * @return The motor velocity in ticks per second.
+     */
+    public double getVelocity() {
+        return motor.getVelocity();
+    }
+
+    @Override
+    public boolean isBusy() {
+        return motor.isBusy();
+    }
+
+    @Override
+    public MotorConfigurationType getMotorType() {
+        return motor.getMotorType();
+    }
+
+    @Override
+    public void setMotorType(MotorConfigurationType motorType) {
+        motor.setMotorType(motorType);
+    }
+
+    @Override
+    public DcMotorController getController() {
+        return motor.getController();
+    }
+
+    @Override
+    public int getPortNumber() {
+        return motor.getPortNumber();
+    }
+
+    @Deprecated
+    @Override
+    public void setPowerFloat() {
+        motor.setPowerFloat();
+        lastPower = Double.NaN;
+    }
+
+    @Override
+    public boolean getPowerFloat() {
+        return motor.getPowerFloat();
+    }
+
+    @Override
+    public Manufacturer getManufacturer() {
+        return motor.getManufacturer();
+    }
+
+    @Override
+    public String getDeviceName() {
+        return motor.getDeviceName();
+    }
+
+    @Override
+    public String getConnectionInfo() {
+        return motor.getConnectionInfo();
+    }
+
+    @Override
+    public int getVersion() {
+        return motor.getVersion();
+    }
+
+    @Override
+    public void resetDeviceConfigurationForOpMode() {
+        motor.resetDeviceConfigurationForOpMode();
+        invalidate();
+    }
+
+    @Override
+    public void close() {
+        motor.close();
+    }
+}
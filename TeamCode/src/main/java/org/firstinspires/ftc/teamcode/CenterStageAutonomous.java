@@ -30,26 +30,24 @@
 package org.firstinspires.ftc.teamcode;
 
 import android.annotation.SuppressLint;
-import android.security.keystore.StrongBoxUnavailableException;
-import android.util.Size;
 
 import com.qualcomm.hardware.lynx.LynxModule;
 import com.qualcomm.hardware.rev.RevHubOrientationOnRobot;
 import com.qualcomm.robotcore.eventloop.opmode.Autonomous;
 import com.qualcomm.robotcore.eventloop.opmode.LinearOpMode;
 import com.qualcomm.robotcore.hardware.DcMotor;
+import com.qualcomm.robotcore.hardware.DcMotorEx;
 import com.qualcomm.robotcore.hardware.IMU;
 import com.qualcomm.robotcore.util.ElapsedTime;
 import com.qualcomm.robotcore.util.Range;
+import com.qualcomm.robotcore.util.RobotLog;
 
-import org.firstinspires.ftc.robotcore.external.hardware.camera.WebcamName;
-import org.firstinspires.ftc.robotcore.external.navigation.AngleUnit;
-import org.firstinspires.ftc.robotcore.external.navigation.YawPitchRollAngles;
-import org.firstinspires.ftc.vision.VisionPortal;
-import org.firstinspires.ftc.vision.apriltag.AprilTagDetection;
-import org.firstinspires.ftc.vision.apriltag.AprilTagProcessor;
+import org.firstinspires.ftc.robotcore.internal.system.AppUtil;
 
+import java.io.File;
+import java.io.IOException;
 import java.util.List;
+import java.util.Locale;
 
 /*
  *  This file illustrates the concept of driving an autonomous path based on Gyro heading and encoder counts.
@@ -103,19 +101,26 @@ import java.util.List;
 public class CenterStageAutonomous extends LinearOpMode {
 
     /* Declare OpMode members. */
-    protected DcMotor leftDriveF = null;
-    protected DcMotor leftDriveB = null;
-    protected DcMotor rightDriveF = null;
-    protected DcMotor rightDriveB = null;
+    protected CachingMotor leftDriveF = null;
+    protected CachingMotor leftDriveB = null;
+    protected CachingMotor rightDriveF = null;
+    protected CachingMotor rightDriveB = null;
     protected IMU imu = null;      // Control/Expansion Hub IMU
+    protected ImuSampler imuSampler = null;    // Reads the IMU on its own thread
     //protected SignalSleeveRecognizer    recognizer = null;
     //protected LinearSlide         linearSlide = null;
     protected Intake intake = null;
     protected SwingArm swingArm = null;
+    // Runs the mechanism commands (see Command) once per cycle, from periodic()
+    protected CommandScheduler commandScheduler = new CommandScheduler();
     protected BucketServo bucketServo = null;
     protected DoorServo doorServo = null;
     protected ElapsedTime runtime = new ElapsedTime();
 
+    // Sensor values for the current loop cycle, read once by stateReader (see RobotState)
+    protected RobotState.Reader stateReader = null;
+    protected RobotState state = null;
+
     private double robotHeading = 0;
     private double headingOffset = 0;
     private double headingError = 0;
@@ -127,6 +132,19 @@ public class CenterStageAutonomous extends LinearOpMode {
     private double turnSpeed = 0;
     private double leftSpeed = 0;
     private double rightSpeed = 0;
+    private final double[] wheelSpeeds = new double[2];
+    // The power sent to each wheel, indexed like MecanumKinematics
+    private final double[] wheelPowers = new double[4];
+    private final double[] holonomicPowers = new double[4];
+    private double steeringGain = 0;
+    private double steeringCorrection = 0;
+    private double steeringIntegral = 0;
+
+    // Heading controllers (see DriveControl for the gains), and which one getSteeringCorrection() last ran
+    private final PidfController turnController = DriveControl.turnController();
+    private final PidfController driveController = DriveControl.driveController();
+    private PidfController steeringController = null;
+    private long lastSteeringNanos = 0;
     private int leftTargetF = 0;
     private int leftTargetB = 0;
     private int rightTargetF = 0;
@@ -145,7 +163,16 @@ public class CenterStageAutonomous extends LinearOpMode {
 
     private FirstVisionProcessor visionProcessor;
 
-    private VisionPortal visionPortal;
+    // Turns the camera processing off once the prop is found (see VisionManager)
+    private VisionManager visionManager;
+
+    // Set by simulate(): the robot being simulated instead of the real one, and where the prop is
+    private SimRobot simRobot = null;
+    private FirstVisionProcessor.Selected simulatedSelection = null;
+    // The time for the driving loops (see NanoClock)
+    protected NanoClock clock = NanoClock.SYSTEM;
+    // The route runAutonomousProgram() picked
+    private CompiledRoute plannedRoute = null;
 
     // Calculate the COUNTS_PER_INCH for your specific drive train.
     // Go to your motor vendor website to determine your motor's COUNTS_PER_MOTOR_REV
@@ -159,6 +186,14 @@ public class CenterStageAutonomous extends LinearOpMode {
     static final double COUNTS_PER_INCH = (COUNTS_PER_MOTOR_REV * DRIVE_GEAR_REDUCTION) /
             (WHEEL_DIAMETER_INCHES * Math.PI);
 
+    // The real counts per inch of our drivetrain, for the localizer. inchesPerTick() below rounds the
+    // gear ratios down to whole numbers (84 / 29 is 2 in integer math), which is most of why
+    // driveStraight() needs its moveCompensation.
+    static final double TRUE_COUNTS_PER_INCH = 28.0 * (84.0 / 29.0) * (76.0 / 21.0) / (75.0 / 25.4 * Math.PI);
+    // With the motor directions set in setupRobot(), positive power (and rising encoder counts) drive
+    // the robot forward along its IMU heading, so negative driveStraight() distances back up
+    static final double ENCODER_FORWARD_SIGN = 1;
+
     double MMperIN = 25.4;
     int wheelDiaMM = 75;
     double wheelDiaIN = wheelDiaMM / MMperIN; //or input just inches as constant
@@ -178,14 +213,119 @@ public class CenterStageAutonomous extends LinearOpMode {
     static final double DRIVE_SPEED = 0.2;     // Max driving speed for better distance accuracy.
     static final double DRIVE_SPEED_LOW = 0.8;
     static final double TURN_SPEED = 0.4;     // Max Turn speed to limit turn rate
-    static final double HEADING_THRESHOLD = 4.0;    // How close must the heading get to the target before moving to next step.
-    // Requiring more accuracy (a smaller number) will often make the turn take longer to get into the final position.
-    // Define the Proportional control coefficient (or GAIN) for "heading control".
-    // We define one value when Turning (larger errors), and the other is used when Driving straight (smaller errors).
-    // Increase these numbers if the heading does not corrects strongly enough (eg: a heavy robot or using tracks)
-    // Decrease these numbers if the heading does not settle on the correct value (eg: very agile robot with omni wheels)
-    static final double P_TURN_GAIN = 0.02;     // Larger is more responsive, but also less stable
-    static final double P_DRIVE_GAIN = 0.03;     // Larger is more responsive, but also less stable
+    static final double MOVE_SPEED = 0.8;     // Fraction of MOVE_MAX_VELOCITY for Path.move()
+    static final double HEADING_THRESHOLD = 4.0;    // How close must the heading get at the end of a move.
+    // Turns end when the turn controller settles instead (see DriveControl.TURN_SETTLE_DEGREES).
+    // The heading control gains are in DriveControl, so SteeringReplay uses the same ones.
+
+    // Motion profiled driveStraight(). Set USE_MOTION_PROFILE to false to go back to RUN_TO_POSITION.
+    // The profile is in encoder ticks: it speeds up and slows down smoothly, and tops out at the
+    // drive's speed (see profileMaxVelocity()).
+    static final boolean USE_MOTION_PROFILE = true;
+    static final double PROFILE_MAX_VELOCITY = 1700;    // ticks per second, the cap for every drive (full speed is about 2800)
+    static final double PROFILE_MAX_ACCELERATION = 3000;   // ticks per second per second
+    static final double PROFILE_MAX_JERK = 15000;       // ticks per second^3, 0 for a trapezoid
+    // power = K_V * velocity + K_A * acceleration + K_P * position error
+    static final double DRIVE_MAX_TICKS_PER_SECOND = 2800;   // UltraPlanetary at 6000 RPM
+    static final double K_V = 1.0 / DRIVE_MAX_TICKS_PER_SECOND;
+    static final double K_A = 0.00004;
+    static final double K_P = 0.002;
+    static final double PROFILE_POSITION_TOLERANCE = 15;   // ticks, how close counts as "there"
+    static final double PROFILE_SETTLE_TIMEOUT = 1.0;       // seconds allowed after the profile ends
+    // followPath(): a turn followed by a drive hands over this far from its heading
+    static final double TURN_BLEND_DEGREES = 15.0;
+    // followPath(): the profile slows down in proportion to the heading error, down to MIN_CORNER_SCALE at this error
+    static final double CORNER_SLOWDOWN_DEGREES = 45.0;
+    static final double MIN_CORNER_SCALE = 0.3;
+
+    // Holonomic moves (Path.move()), in inches. These go through the Localizer, so they use real inches.
+    static final double MOVE_MAX_VELOCITY = 40;         // inches per second
+    static final double MOVE_MAX_ACCELERATION = 60;     // inches per second per second
+    static final double MOVE_MAX_JERK = 300;            // inches per second^3
+    static final double MOVE_K_V = TRUE_COUNTS_PER_INCH / DRIVE_MAX_TICKS_PER_SECOND;   // power per inch per second
+    static final double MOVE_K_A = 0.0013;
+    static final double MOVE_K_P = 2.0;                 // inches per second per inch behind
+    static final double MOVE_K_HEADING = 3.0;           // degrees per second per degree off
+    static final double MOVE_POSITION_TOLERANCE = 0.5;  // inches
+    static final double HALF_SPAN_INCHES = (15.0 + 13.0) / 2;   // (track width + wheel base) / 2
+    static final double STRAFE_MULTIPLIER = 1.0;        // lower this if strafes come up short
+
+    // Ending drives and moves (see MotionCompletion), instead of waiting on isBusy()
+    static final double ARRIVED_VELOCITY = 100;         // ticks per second, about 3 inches per second
+    static final int ARRIVED_CYCLES = 3;                // cycles in a row at the target, stopped
+    static final double STALL_VELOCITY = 50;            // ticks per second
+    static final double STALL_SECONDS = 0.5;            // away from the target and not moving this long is a stall
+    static final double DRIVE_TIMEOUT_MARGIN = 1.5;     // seconds on top of how long a RUN_TO_POSITION drive should take
+    static final double MOVE_ARRIVED_VELOCITY = ARRIVED_VELOCITY / TRUE_COUNTS_PER_INCH;    // inches per second
+    static final double MOVE_STALL_VELOCITY = STALL_VELOCITY / TRUE_COUNTS_PER_INCH;
+    // Turns that haven't settled after the time they should take plus this fall back to HEADING_THRESHOLD,
+    // and give up at TURN_GIVE_UP_FACTOR times that
+    static final double TURN_TIMEOUT_MARGIN = 1.0;      // seconds
+    static final double TURN_GIVE_UP_FACTOR = 2.0;
+
+    // deliverPixel() waits for the arm to get there instead of sleeping for a fixed time
+    static final int ARM_POSITION_TOLERANCE = 40;       // ticks
+    static final double ARM_RAISE_TIMEOUT = 2.5;        // seconds, the old code always slept 2
+    static final double DOOR_OPEN_SECONDS = 0.5;        // the door servo can't tell us when it's open
+    // followRoute(): raise the arm while driving to the backdrop, instead of after getting there
+    static final boolean RAISE_ARM_WHILE_DRIVING = true;
+
+    // Fitting autonomous into the match (see TaskPlanner)
+    static final double AUTONOMOUS_SECONDS = 30.0;
+    static final double TIME_MARGIN_SECONDS = 1.5;      // in case a run is slower than the history says
+    static final double MIN_STALL_WAIT_SECONDS = 3.0;   // drop tasks rather than plan a shorter stall wait than this
+    static final int MAX_ROUTE_STEPS = 32;
+
+    // If vision isn't sure where the prop is when the match starts, watch this much longer (see SelectionVoter)
+    static final double SELECTION_WAIT_SECONDS = 1.0;
+
+    // How long each cycle of the driving loops should take. The gains above were tuned at this rate,
+    // so every loop runs at the same period no matter how long telemetry or I2C reads take.
+    static final double LOOP_PERIOD_MS = 20.0;
+    // Drive power changes smaller than this aren't worth a USB transaction.
+    static final double DRIVE_POWER_EPSILON = 0.005;
+    protected LoopScheduler loopScheduler = new LoopScheduler(LOOP_PERIOD_MS);
+    // Times the sense/compute/actuate/telemetry parts of each cycle
+    protected LoopTimer loopTimer = new LoopTimer();
+
+    // Telemetry for the driving loops. Only formatted and sent when the Driver Station is ready for it.
+    protected ThrottledTelemetry loopTelemetry = null;
+    private int motionSlot;
+    private int targetPosSlot;
+    private int actualPosSlot;
+    private int angleSlot;
+    private int errorSteerSlot;
+    private int wheelSpeedSlot;
+    private int loopTimeSlot;
+    private int loopPeriodSlot;
+    private int overrunSlot;
+    private int writesSavedSlot;
+    private int imuSlot;
+    private long imuStaleCycles = 0;
+
+    // Records every cycle to a file on the Control Hub. null if the file couldn't be opened.
+    protected CycleLogger cycleLogger = null;
+
+    // Where the robot is on the field, updated every time the state is read
+    protected MotionCompletion driveCompletion = new MotionCompletion(PROFILE_POSITION_TOLERANCE,
+            ARRIVED_VELOCITY, ARRIVED_CYCLES, STALL_VELOCITY, STALL_SECONDS);
+    protected MotionCompletion moveCompletion = new MotionCompletion(MOVE_POSITION_TOLERANCE,
+            MOVE_ARRIVED_VELOCITY, ARRIVED_CYCLES, MOVE_STALL_VELOCITY, STALL_SECONDS);
+    private int driveStalls = 0;
+    private int turnTimeouts = 0;
+    // Scales the motor powers for the battery voltage, updated in readState()
+    protected VoltageCompensation voltageCompensation = new VoltageCompensation();
+    protected TaskPlanner taskPlanner = new TaskPlanner(ROUTE_COUNT, MAX_ROUTE_STEPS);
+    private File timingFile = null;
+    private long matchStartNanos = 0;
+    protected Localizer localizer = new Localizer(TRUE_COUNTS_PER_INCH, ENCODER_FORWARD_SIGN);
+    protected HolonomicController holonomicController = new HolonomicController(MOVE_K_V, MOVE_K_A,
+            MOVE_K_P, MOVE_K_HEADING, HALF_SPAN_INCHES, STRAFE_MULTIPLIER, ENCODER_FORWARD_SIGN);
+    private int poseSlot;
+    private int driveEndSlot;
+    private int turnEndSlot;
+    private int planSlot;
+    private int cameraSlot;
 
     //stuff that makes the left and right side autonomous (hopefully) work! :D
     // If your robot starts on the right side in the driver's view, (A2 or F5), set to 1
@@ -197,11 +337,18 @@ public class CenterStageAutonomous extends LinearOpMode {
     protected List<LynxModule> allHubs;
 
     protected void setupRobot() {
+        loopTelemetry = new ThrottledTelemetry(telemetry);
+        setupLoopTelemetry();
+
         // Initialize the drive system variables.
-        leftDriveB = hardwareMap.get(DcMotor.class, "left_driveB");
-        leftDriveF = hardwareMap.get(DcMotor.class, "left_driveF");
-        rightDriveB = hardwareMap.get(DcMotor.class, "right_driveB");
-        rightDriveF = hardwareMap.get(DcMotor.class, "right_driveF");
+        // The drive motors skip writes that wouldn't change anything (see CachingMotor)
+        // The totals would otherwise carry over from the last OpMode that ran
+        CachingMotor.resetTotalWritesSaved();
+        ServoController.resetTotalWritesSaved();
+        leftDriveB = new CachingMotor(hardwareMap.get(DcMotorEx.class, "left_driveB"), DRIVE_POWER_EPSILON);
+        leftDriveF = new CachingMotor(hardwareMap.get(DcMotorEx.class, "left_driveF"), DRIVE_POWER_EPSILON);
+        rightDriveB = new CachingMotor(hardwareMap.get(DcMotorEx.class, "right_driveB"), DRIVE_POWER_EPSILON);
+        rightDriveF = new CachingMotor(hardwareMap.get(DcMotorEx.class, "right_driveF"), DRIVE_POWER_EPSILON);
         //recognizer = new SignalSleeveRecognizer(hardwareMap, telemetry);
         //linearSlide = new LinearSlide(hardwareMap, telemetry, gamepad2);
         //intake = new Intake(hardwareMap, telemetry, gamepad2);
@@ -210,12 +357,19 @@ public class CenterStageAutonomous extends LinearOpMode {
         boolean isNear;
         boolean parkLeft;
 
-        swingArm = new SwingArm(hardwareMap, telemetry, gamepad2, true);
+        swingArm = new SwingArm(hardwareMap, loopTelemetry, gamepad2, true);
 
         doorServo = new DoorServo(hardwareMap, gamepad2);
 
         bucketServo = new BucketServo(hardwareMap);
 
+        // Scale the motor powers for the battery voltage (see VoltageCompensation)
+        leftDriveF.setVoltageCompensation(voltageCompensation);
+        leftDriveB.setVoltageCompensation(voltageCompensation);
+        rightDriveF.setVoltageCompensation(voltageCompensation);
+        rightDriveB.setVoltageCompensation(voltageCompensation);
+        swingArm.setVoltageCompensation(voltageCompensation);
+
         // To drive forward, most robots need the motor on one side to be reversed, because the axles point in opposite directions.
         // When run, this OpMode should start both motors driving forward. So adjust these two lines based on your first test drive.
         // Note: The settings here assume direct drive on left and right wheels.  Gear Reduction or 90 Deg drives may require direction flips
@@ -243,6 +397,9 @@ public class CenterStageAutonomous extends LinearOpMode {
                         RevHubOrientationOnRobot.LogoFacingDirection.FORWARD,
                         RevHubOrientationOnRobot.UsbFacingDirection.RIGHT
                 )));
+        imuSampler = new ImuSampler(imu, clock);
+        // In a simulation readState() polls it every cycle instead, so every run comes out the same
+        if (simRobot == null) imuSampler.start();
 
         // Ensure the robot is stationary.  Reset the encoders and set the motors to BRAKE mode
         leftDriveF.setMode(DcMotor.RunMode.STOP_AND_RESET_ENCODER);
@@ -261,6 +418,28 @@ public class CenterStageAutonomous extends LinearOpMode {
             hub.setBulkCachingMode(LynxModule.BulkCachingMode.MANUAL);
         }
 
+        localizer.setStrafeMultiplier(STRAFE_MULTIPLIER);
+
+        stateReader = new RobotState.Reader(allHubs, leftDriveF, leftDriveB, rightDriveF, rightDriveB,
+                imuSampler, hardwareMap.voltageSensor.iterator().next(), clock);
+
+        // A simulation doesn't touch the robot's files (and there's no robot data folder on a laptop)
+        if (simRobot == null) {
+            try {
+                cycleLogger = new CycleLogger(new File(AppUtil.ROBOT_DATA_DIR, "CenterStageAutonomous.cyclelog"));
+            } catch (IOException e) {
+                telemetry.addData("Cycle log", "Could not open: " + e.getMessage());
+            }
+
+            // How long each route took in earlier runs, for the TaskPlanner
+            timingFile = new File(AppUtil.ROBOT_DATA_DIR, "CenterStageAutonomous.timing");
+            try {
+                taskPlanner.load(timingFile);
+            } catch (IOException e) {
+                telemetry.addData("Timing history", "Could not read: " + e.getMessage());
+            }
+        }
+
         // By default the value is 250ms... we send data to Driver Station 4x per second.
         // We can see if our loop runs faster if we essentially disable telemetry by putting
         // a high number here.
@@ -274,31 +453,175 @@ public class CenterStageAutonomous extends LinearOpMode {
 
 
     public void mechanismLoop() {
-        swingArm.loop();
-        bucketServo.loop();
-        //doorServo.loop();
+        swingArm.loop(state);
+        bucketServo.loop(state);
+        //doorServo.loop(state);
     }
 
+    /**
+     * Everything that has to happen once per cycle of a driving loop, after the motor powers are set.
+     * Runs the scheduled commands, updates the mechanisms, sends telemetry, waits for the next cycle and then reads the robot state for it.
+     *
+     * @param straight Set to true if we are driving straight, so the encoder positions are included in the telemetry.
+     */
+    protected void periodic(boolean straight) {
+        commandScheduler.run(state.timestampNanos);
+        if (visionManager != null) visionManager.update();
+        mechanismLoop();
+        loopTimer.mark(LoopTimer.ACTUATE);
+
+        logCycle();
+
+        // Display drive status for the driver.
+        sendTelemetry(straight);
+        loopTimer.mark(LoopTimer.TELEMETRY);
+        loopTimer.endCycle();
+
+        loopScheduler.sync();
+        loopTimer.restart();
+
+        readState();
+    }
+
+    /**
+     * Records this cycle's sensor values and commands to the cycle log.
+     */
+    protected void logCycle() {
+        if (cycleLogger == null) return;
+
+        cycleLogger.set(CycleLog.LEFT_FRONT_POS, state.leftFrontPosition);
+        cycleLogger.set(CycleLog.LEFT_BACK_POS, state.leftBackPosition);
+        cycleLogger.set(CycleLog.RIGHT_FRONT_POS, state.rightFrontPosition);
+        cycleLogger.set(CycleLog.RIGHT_BACK_POS, state.rightBackPosition);
+        cycleLogger.set(CycleLog.YAW, state.yaw);
+        cycleLogger.set(CycleLog.YAW_RATE, state.yawRate);
+        cycleLogger.set(CycleLog.HEADING_OFFSET, headingOffset);
+        cycleLogger.set(CycleLog.TARGET_HEADING, targetHeading);
+        cycleLogger.set(CycleLog.DRIVE_SPEED, driveSpeed);
+        cycleLogger.set(CycleLog.TURN_SPEED, turnSpeed);
+        cycleLogger.set(CycleLog.STEERING_GAIN, steeringGain);
+        cycleLogger.set(CycleLog.STEERING_CORRECTION, steeringCorrection);
+        cycleLogger.set(CycleLog.STEERING_INTEGRAL, steeringIntegral);
+        // Only cycles where getSteeringCorrection() actually ran, so the replay updates the controller on the same ones
+        int controller = CycleLog.CONTROLLER_NONE;
+        if (lastSteeringNanos == state.timestampNanos) {
+            controller = steeringController == turnController ? CycleLog.CONTROLLER_TURN : CycleLog.CONTROLLER_DRIVE;
+        }
+        cycleLogger.set(CycleLog.STEERING_CONTROLLER, controller);
+        cycleLogger.set(CycleLog.LEFT_FRONT_POWER, wheelPowers[MecanumKinematics.LEFT_FRONT]);
+        cycleLogger.set(CycleLog.LEFT_BACK_POWER, wheelPowers[MecanumKinematics.LEFT_BACK]);
+        cycleLogger.set(CycleLog.RIGHT_FRONT_POWER, wheelPowers[MecanumKinematics.RIGHT_FRONT]);
+        cycleLogger.set(CycleLog.RIGHT_BACK_POWER, wheelPowers[MecanumKinematics.RIGHT_BACK]);
+        cycleLogger.set(CycleLog.ARM_TARGET, swingArm.getTargetPosition());
+        cycleLogger.set(CycleLog.SELECTION, visionProcessor.getDecision().ordinal());
+        cycleLogger.set(CycleLog.BATTERY_VOLTAGE, state.batteryVoltage);
+        cycleLogger.set(CycleLog.POSE_X, localizer.getX());
+        cycleLogger.set(CycleLog.POSE_Y, localizer.getY());
+        cycleLogger.commit(state.timestampNanos);
+    }
+
+    /**
+     * Call right before entering a driving loop, so the first cycle has a fresh state and a full period.
+     */
+    protected void startLoop() {
+        loopTimer.startCycle();
+        readState();
+        loopScheduler.reset();
+    }
+
+    /**
+     * Clears the bulk cache and reads all the sensors for this cycle into state, and updates the pose.
+     */
+    protected void readState() {
+        if (simRobot != null) imuSampler.poll();
+        state = stateReader.read();
+        if (state.imuStale) imuStaleCycles++;
+        voltageCompensation.update(state.batteryVoltage, state.timestampNanos);
+        localizer.update(state.leftFrontPosition, state.leftBackPosition,
+                state.rightFrontPosition, state.rightBackPosition, state.yaw);
+        loopTimer.mark(LoopTimer.SENSE);
+    }
+
+
+    /**
+     * Runs the autonomous on a SimRobot instead of the real robot, so a whole match can run in a
+     * JUnit test, much faster than real time. Call it before runOpMode(), which then:
+     *  - runs on the robot's simulated clock, and steps the robot one loop period every cycle
+     *  - doesn't open the camera, and goes to the spike mark at selection
+     *  - skips the init loop (the menu options are whatever the fields are set to) and starts right away
+     *  - stops after AUTONOMOUS_SECONDS of simulated time, like the real match
+     *  - polls the IMU every cycle instead of on the ImuSampler thread, so every run is the same
+     *  - doesn't read or write the robot's data files
+     */
+    public void simulate(SimRobot robot, FirstVisionProcessor.Selected selection) {
+        simRobot = robot;
+        simulatedSelection = selection;
+        hardwareMap = SimHardwareMap.create(robot);
+        clock = robot;
+        loopScheduler = new LoopScheduler(LOOP_PERIOD_MS, robot);
+        loopScheduler.simulate(robot.stepper(LOOP_PERIOD_MS));
+    }
+
+    /**
+     * @return True while the driving loops should keep going: opModeIsActive(), or in a simulation,
+     * until AUTONOMOUS_SECONDS of simulated time have passed.
+     */
+    protected boolean isActive() {
+        if (simRobot != null) {
+            return (clock.nanoTime() - matchStartNanos) / 1e9 < AUTONOMOUS_SECONDS;
+        }
+        return opModeIsActive() && !isStopRequested();
+    }
+
+    /**
+     * @return The route runAutonomousProgram() picked, or null if it hasn't picked one yet.
+     */
+    public CompiledRoute getPlannedRoute() {
+        return plannedRoute;
+    }
 
-    @SuppressLint("DefaultLocale")
     @Override
     public void runOpMode() {
         setupRobot();
+        try {
+            runAfterSetup();
+        } finally {
+            imuSampler.stop();
+            if (cycleLogger != null) cycleLogger.close();
+            // Stop the camera before freeing the processor's Mats, and log any that leaked
+            if (visionManager != null) RobotLog.ii("CenterStageAutonomous", visionManager.close());
+        }
+    }
+
+    @SuppressLint("DefaultLocale")
+    private void runAfterSetup() {
+        if (simRobot != null) {
+            // No camera and no Start button in a simulation, so plan everything and go
+            if (scoreYellowPixel) parkInCorner = false;
+            compileRoutes(ROUTE_COUNT);
+        } else {
+            visionManager = new VisionManager(hardwareMap);
+            visionProcessor = visionManager.getPropProcessor();
+        }
         // Wait for the game to start (Display Gyro value while waiting)
-        visionProcessor = new FirstVisionProcessor();
-        visionPortal = VisionPortal.easyCreateWithDefaults(hardwareMap.get(WebcamName.class, "Webcam 1"), visionProcessor);
-        while (opModeInInit()) {
-            telemetry.addLine(String.format("Robot Heading: %4.0f", getRawHeading()));
+        while (simRobot == null && opModeInInit()) {
+            readState();
+            telemetry.addLine(String.format("Robot Heading: %4.0f", state.yaw));
             //telemetry.addData("Bot heading", imu.getRobotYawPitchRollAngles().getYaw(AngleUnit.RADIANS));
-            telemetry.addData("Identified", visionProcessor.getSelection());
+            telemetry.addData("Identified", visionProcessor.decisionSummary());
+            // If the frame count stops going up, the camera has stopped, and so has the decision
+            FirstVisionProcessor.Result frame = visionProcessor.getLatestResult();
+            telemetry.addLine(String.format("Frame %d, %.0f ms old", frame.sequence,
+                    frame.ageSeconds(System.nanoTime()) * 1000));
+            telemetry.addData("Vision memory", visionProcessor.getTracker().summary());
+            telemetry.addData("Camera", visionManager.status());
             telemetry.addLine(""); // new line
-            telemetry.addData("left front starting:", leftDriveF.getCurrentPosition());
-            telemetry.addData("left back starting:", leftDriveB.getCurrentPosition());
-            telemetry.addData("right front starting:", rightDriveF.getCurrentPosition());
-            telemetry.addData("right back starting:", rightDriveB.getCurrentPosition());
+            telemetry.addData("left front starting:", state.leftFrontPosition);
+            telemetry.addData("left back starting:", state.leftBackPosition);
+            telemetry.addData("right front starting:", state.rightFrontPosition);
+            telemetry.addData("right back starting:", state.rightBackPosition);
             telemetry.addLine(""); // new line
 
-            visionProcessor.getSelection();
             if (gamepad1.dpad_up) {
                 isFar = false;
             } else if (gamepad1.dpad_down) {
@@ -332,9 +655,15 @@ public class CenterStageAutonomous extends LinearOpMode {
             telemetry.addData("Parking", parkInCorner ? "Square" : "Triangle");
             telemetry.addData("Stall", isStalled ? "Stalled" : "Not stalled");
             telemetry.addData("Scoring", scoreYellowPixel ? "Purple & Yellow" : "Purple");
+
+            // Plan every possible route while we wait, a few each time around
+            boolean routesReady = compileRoutes(ROUTES_PER_INIT_LOOP);
+            telemetry.addData("Routes", routesReady ? "Ready" : "Planning...");
             telemetry.addLine(); //new line
             telemetry.update();
         }
+        // The autonomous clock starts now
+        matchStartNanos = clock.nanoTime();
         /*
 
         (placing purple pixel code)
@@ -348,7 +677,13 @@ public class CenterStageAutonomous extends LinearOpMode {
          */
 
         if (gamepad1.back || gamepad2.back) {
-            imu.resetYaw();
+            // The sampler thread does the reset between reads. Wait for it, so resetHeading()
+            // below goes from a heading read after the reset.
+            imuSampler.requestYawReset();
+            while (imuSampler.isYawResetPending() && isActive()) {
+                idle();
+            }
+            readState();
         }
 
         // Set the encoders for closed loop speed control, and reset the heading.
@@ -357,13 +692,15 @@ public class CenterStageAutonomous extends LinearOpMode {
         rightDriveF.setMode(DcMotor.RunMode.RUN_USING_ENCODER);
         rightDriveB.setMode(DcMotor.RunMode.RUN_USING_ENCODER);
         resetHeading();
+        // The field origin is wherever the robot starts, facing forward
+        localizer.setPose(0, 0, 0);
 
         runAutonomousProgram(allianceColor, isFar, parkInCorner);
 
         telemetry.addData("Path", "Complete");
         telemetry.update();
-        sleep(1000);
-        // Pause to display last telemetry message.
+        // Pause to display last telemetry message (no one's watching a simulation).
+        if (simRobot == null) sleep(1000);
     }
 // step 1. strafe step 2. find april tags as we strafe step 3. find which april tag is correct based on what spike mark we are on (ex. if right spikemark then strafe till find right april tag)
     // TO-NOT-DO: 12/27/2023 figure out if processFrame is run only once or always after autonomous is run
@@ -373,7 +710,7 @@ public class CenterStageAutonomous extends LinearOpMode {
     @SuppressLint("DefaultLocale")
     public void runAutonomousProgram(String allianceColor, boolean isFar, boolean parkInCorner) {
 
-        FirstVisionProcessor.Selected selected = FirstVisionProcessor.selection;
+        FirstVisionProcessor.Selected selected = waitForDecision();
 
         /*
         stuff for april tag identification & camera stream
@@ -424,131 +761,263 @@ public class CenterStageAutonomous extends LinearOpMode {
 */
         } else {
 
+            // Planned during init (see compileRoutes), so all that's left is to pick one and drive it
+            int routeIndex = planRoute(selected);
+            plannedRoute = getRoute(selected, isRed, isFar, (routeIndex & 4) != 0, isStalled, (routeIndex & 1) != 0);
+            followRoute(plannedRoute, routeIndex);
+            if (isActive() && timingFile != null) {
+                // Only whole runs, so the history isn't thrown off by a stopped one
+                try {
+                    taskPlanner.save(timingFile);
+                } catch (IOException e) {
+                    telemetry.addData("Timing history", "Could not save: " + e.getMessage());
+                }
+            }
+        }
+    }
+
+
+    /**
+     * The autonomous route for one combination of the init menu choices and the spike mark.
+     * Everything here has to come from the arguments (not the fields), since routes are built for
+     * every combination ahead of time.
+     */
+    private Path buildRoute(FirstVisionProcessor.Selected selected, boolean isRed, boolean isFar,
+                            boolean parkInCorner, boolean isStalled, boolean scoreYellowPixel) {
+        //todo... initialize variables at start of code
+        final double DIST_WALL_TO_TRIANGLE = -44;
+        final double DIST_TO_TRIANGLE_PARK = -20;
+        double distAprilTag = 0;
+        double tagNearDist = 20;
+        double tagMidDist = 24;
+        double tagFarDist = 28;
+        double distToBackdropTag = -15;
+        double distToBackdropTagReverse = -distToBackdropTag;
+        double distToTrianglePark = DIST_TO_TRIANGLE_PARK;
+
+        if (scoreYellowPixel) {
             switch (selected) {
                 case LEFT:
-                    driveStraight(DRIVE_SPEED, -14, 0, notMirrored);
-                    turnToHeading(TURN_SPEED, 45, notMirrored);
-                    driveStraight(0.5, -9.5, 0, notMirrored);
-                    driveStraight(0.5, 9.5, 0, notMirrored);
-                    turnToHeading(TURN_SPEED, 0, notMirrored);
-                    if (isStalled) {
-                        if (parkInCorner) {
-                            sleep(8000);
-                        } else {
-                            sleep(7500);
-                        }
+                    if (isRed) {
+                        distAprilTag = -tagFarDist;
+                    } else {
+                        distAprilTag = -tagNearDist;
                     }
-                    driveStraight(DRIVE_SPEED, 13, 0, notMirrored);
                     break;
                 case MIDDLE:
-                    driveStraight(DRIVE_SPEED, -26, 0.0, notMirrored);
-                    if (isStalled) {
-                        if (parkInCorner) {
-                            sleep(10000);
-                        } else {
-                            sleep(7500);
-                        }
-                    }
-                    driveStraight(DRIVE_SPEED, 23, 0.0, notMirrored);
+                    distAprilTag = -tagMidDist;
                     break;
                 case RIGHT:
-                    driveStraight(DRIVE_SPEED, -14, 0, notMirrored);
-                    turnToHeading(TURN_SPEED, -45, notMirrored);
-                    driveStraight(0.5, -9.5, 0, notMirrored);
-                    driveStraight(0.5, 9.5, 0, notMirrored);
-                    turnToHeading(TURN_SPEED, 0, notMirrored);
-                    if (isStalled) {
-                        if (parkInCorner) {
-                            sleep(8000);
-                        } else {
-                            sleep(7500);
-                        }
+                    if (isRed) {
+                        distAprilTag = -tagNearDist;
+                    } else {
+                        distAprilTag = -tagFarDist;
                     }
-                    driveStraight(DRIVE_SPEED, 13, 0, notMirrored);
                     break;
             }
+        }
+
+        double distWallToTriangle = DIST_WALL_TO_TRIANGLE - distAprilTag - 5;
+
+        // The whole route is one path, so the robot only stops where it has to (see followPath).
+        // Stalling is a wait in the path, which the TaskPlanner can shorten.
+        Path path = new Path();
+        switch (selected) {
+            case LEFT:
+                path.drive(DRIVE_SPEED, -14, 0, notMirrored)
+                        .turn(TURN_SPEED, 45, notMirrored)
+                        // Drives steer to their heading now, so keep facing the spike mark
+                        .drive(0.5, -9.5, 45, notMirrored)
+                        .drive(0.5, 9.5, 45, notMirrored)
+                        .turn(TURN_SPEED, 0, notMirrored);
+                if (isStalled) {
+                    path.stallWait(parkInCorner ? 8000 : 7500);
+                }
+                path.drive(DRIVE_SPEED, 13, 0, notMirrored);
+                break;
+            case MIDDLE:
+                path.drive(DRIVE_SPEED, -26, 0.0, notMirrored);
+                if (isStalled) {
+                    path.stallWait(parkInCorner ? 10000 : 7500);
+                }
+                path.drive(DRIVE_SPEED, 23, 0.0, notMirrored);
+                break;
+            case RIGHT:
+                path.drive(DRIVE_SPEED, -14, 0, notMirrored)
+                        .turn(TURN_SPEED, -45, notMirrored)
+                        // Drives steer to their heading now, so keep facing the spike mark
+                        .drive(0.5, -9.5, -45, notMirrored)
+                        .drive(0.5, 9.5, -45, notMirrored)
+                        .turn(TURN_SPEED, 0, notMirrored);
+                if (isStalled) {
+                    path.stallWait(parkInCorner ? 8000 : 7500);
+                }
+                path.drive(DRIVE_SPEED, 13, 0, notMirrored);
+                break;
+        }
 
+        path.turn(TURN_SPEED, 90, isMirrored);
+        if (isFar) {
+            path.drive(DRIVE_SPEED, parkInCorner ? -94 : -74, 90, isMirrored);
+        } else {
+            path.drive(DRIVE_SPEED, parkInCorner ? -44 : -24, 90, isMirrored);
+        }
 
+        /* todo... organize and correct this block of code
+
+        if (!parkInCorner && !scoreYellowPixel) {
+            turnToHeading(TURN_SPEED, 0, isMirrored);
+            driveStraight(DRIVE_SPEED, -44, 0, notMirrored);
+            turnToHeading(TURN_SPEED, -90, isMirrored);
+            driveStraight(DRIVE_SPEED, 20, -90, isMirrored);
+        } else if (scoreYellowPixel) {
+            turnToHeading(TURN_SPEED, 0, isMirrored);
+            driveStraight(DRIVE_SPEED, -22, 0, notMirrored);
             turnToHeading(TURN_SPEED, 90, isMirrored);
-            if (isFar) {
-                driveStraight(DRIVE_SPEED, parkInCorner ? -94 : -74, 89, isMirrored);
-            } else {
-                driveStraight(DRIVE_SPEED, parkInCorner ? -44 : -24, 90, isMirrored);
-            }
+            driveStraight(DRIVE_SPEED, 20, -90, isMirrored);
+            deliverPixel();
+        }
+        */
 
-            /* todo... organize and correct this block of code
-
-            if (!parkInCorner && !scoreYellowPixel) {
-                turnToHeading(TURN_SPEED, 0, isMirrored);
-                driveStraight(DRIVE_SPEED, -44, 0, notMirrored);
-                turnToHeading(TURN_SPEED, -90, isMirrored);
-                driveStraight(DRIVE_SPEED, 20, -90, isMirrored);
-            } else if (scoreYellowPixel) {
-                turnToHeading(TURN_SPEED, 0, isMirrored);
-                driveStraight(DRIVE_SPEED, -22, 0, notMirrored);
-                turnToHeading(TURN_SPEED, 90, isMirrored);
-                driveStraight(DRIVE_SPEED, 20, -90, isMirrored);
-                deliverPixel();
-            }
-            */
-
-            //todo... initialize variables at start of code
-            final double DIST_WALL_TO_TRIANGLE = -44;
-            final double DIST_TO_TRIANGLE_PARK = -20;
-            double distAprilTag = 0;
-            double tagNearDist = 20;
-            double tagMidDist = 24;
-            double tagFarDist = 28;
-            double distToBackdropTag = -15;
-            double distToBackdropTagReverse = -distToBackdropTag;
-            double distToTrianglePark = DIST_TO_TRIANGLE_PARK;
-
-
-
-            //todo... run this code before autonomous path
-            if (scoreYellowPixel) {
-                switch (selected) {
-                    case LEFT:
-                        if (isRed) {
-                            distAprilTag = -tagFarDist;
-                        } else {
-                            distAprilTag = -tagNearDist;
-                        }
-                        break;
-                    case MIDDLE:
-                        distAprilTag = -tagMidDist;
-                        break;
-                    case RIGHT:
-                        if (isRed) {
-                            distAprilTag = -tagNearDist;
-                        } else {
-                            distAprilTag = -tagFarDist;
-                        }
-                        break;
-                }
-            }
+        // The robot is now facing along the wall (heading 90). Instead of turning to 0, driving
+        // and turning back, slide across with the mecanum wheels while still facing 90.
+        // At heading 0 a driveStraight() distance of d moves the robot d along x, and at heading 90, d along y.
+        if (scoreYellowPixel) {
+            path.move(MOVE_SPEED, distAprilTag, distToBackdropTag, 90, isMirrored)
+                    .deliver()
+                    .pause(1000)
+                    .drive(DRIVE_SPEED, distToBackdropTagReverse, 90, isMirrored);
+        }
+        if (!parkInCorner) {
+            path.move(MOVE_SPEED, distWallToTriangle, distToTrianglePark, 90, isMirrored);
+        }
+        //Code above does wierd stuff. Would not trust.
+        return path;
+    }
 
-            double distWallToTriangle = DIST_WALL_TO_TRIANGLE - distAprilTag - 5;
+    // One route for each spike mark (including NONE) and each combination of the 5 init menu switches
+    private static final int ROUTE_COUNT = 4 * 32;
+    // How many routes to compile each time around the init loop, so the menu stays responsive
+    static final int ROUTES_PER_INIT_LOOP = 16;
+    private final CompiledRoute[] routes = new CompiledRoute[ROUTE_COUNT];
+    private int routesCompiled = 0;
+
+    private static int routeIndex(int selected, boolean isRed, boolean isFar,
+                                  boolean parkInCorner, boolean isStalled, boolean scoreYellowPixel) {
+        return selected * 32
+                + (isRed ? 16 : 0) + (isFar ? 8 : 0) + (parkInCorner ? 4 : 0)
+                + (isStalled ? 2 : 0) + (scoreYellowPixel ? 1 : 0);
+    }
 
-            turnToHeading(TURN_SPEED, 0, isMirrored);
-            if(scoreYellowPixel){
-                driveStraight(DRIVE_SPEED, distAprilTag, 0, notMirrored);
-                turnToHeading(TURN_SPEED, 90, isMirrored);
-                driveStraight(DRIVE_SPEED, distToBackdropTag, 0, notMirrored );
-                deliverPixel();
-                sleep(1000);
-                driveStraight(DRIVE_SPEED, distToBackdropTagReverse, 0, notMirrored);
-            }
-            if (!parkInCorner) {
-                turnToHeading(TURN_SPEED, 0, isMirrored);
-                driveStraight(DRIVE_SPEED, distWallToTriangle, 0, notMirrored);
-                turnToHeading(TURN_SPEED, 90, isMirrored);
-                driveStraight(0.8, distToTrianglePark, 90, notMirrored);
-            }
-            //Code above does wierd stuff. Would not trust.
+    /**
+     * Compiles up to count more routes. Call it from the init loop until it returns true.
+     *
+     * @return true once every route is compiled.
+     */
+    protected boolean compileRoutes(int count) {
+        FirstVisionProcessor.Selected[] selections = FirstVisionProcessor.Selected.values();
+        for (; count > 0 && routesCompiled < ROUTE_COUNT; count--, routesCompiled++) {
+            int i = routesCompiled;
+            boolean red = (i & 16) != 0;
+            Path path = buildRoute(selections[i / 32], red, (i & 8) != 0,
+                    (i & 4) != 0, (i & 2) != 0, (i & 1) != 0);
+            routes[i] = compileRoute(path, red);
         }
+        return routesCompiled == ROUTE_COUNT;
     }
 
+    /**
+     * @return Where the team prop is. If the last few frames don't agree yet, keeps watching for up
+     * to SELECTION_WAIT_SECONDS, then goes with the best guess. Either way the answer is then fixed
+     * for the rest of the match.
+     */
+    private FirstVisionProcessor.Selected waitForDecision() {
+        if (simulatedSelection != null) return simulatedSelection;
+        ElapsedTime waitTime = new ElapsedTime();
+        while (isActive() && !visionProcessor.isDecisionLocked() && waitTime.seconds() < SELECTION_WAIT_SECONDS) {
+            sleep(10);
+        }
+        // Nothing needs the camera for the rest of the match, so stop it taking CPU from the drive loop
+        setVisionMode(VisionManager.IDLE);
+        return visionProcessor.freezeDecision();
+    }
+
+    /**
+     * Switches what the camera is doing (see VisionManager), and shows it on the driver station.
+     */
+    private void setVisionMode(int mode) {
+        if (mode == visionManager.getMode()) return;
+        if (mode == VisionManager.IDLE) {
+            visionManager.idle();
+        } else {
+            visionManager.findProp();
+        }
+        loopTelemetry.setText(cameraSlot, VisionManager.MODE_NAMES[mode]);
+    }
+
+    /**
+     * Chooses whether to score the yellow pixel and where to park, from how long each route is
+     * expected to take (see TaskPlanner) and how much of autonomous is left. The drivers' choices
+     * win whenever they fit; otherwise the yellow pixel is dropped, then the other park is tried.
+     *
+     * @return The route index (see routeIndex()) of the plan to run.
+     */
+    private int planRoute(FirstVisionProcessor.Selected selected) {
+        // The yellow pixel is only ever scored with the drivers' park. Without it, the first two
+        // candidates would be the same route, so there's only two.
+        boolean[] yellow;
+        boolean[] corner;
+        if (scoreYellowPixel) {
+            yellow = new boolean[]{true, false, false};
+            corner = new boolean[]{parkInCorner, parkInCorner, !parkInCorner};
+        } else {
+            yellow = new boolean[]{false, false};
+            corner = new boolean[]{parkInCorner, !parkInCorner};
+        }
+        double[] seconds = new double[yellow.length];
+        int[] points = new int[yellow.length];
+        for (int i = 0; i < yellow.length; i++) {
+            CompiledRoute route = getRoute(selected, isRed, isFar, corner[i], isStalled, yellow[i]);
+            seconds[i] = taskPlanner.remainingSeconds(
+                    routeIndex(selected.ordinal(), isRed, isFar, corner[i], isStalled, yellow[i]), route, 0);
+            points[i] = TaskPlanner.PURPLE_PIXEL_POINTS + (yellow[i] ? TaskPlanner.YELLOW_PIXEL_POINTS : 0)
+                    + TaskPlanner.PARK_POINTS;
+        }
+
+        int choice = TaskPlanner.choose(seconds, points, remainingMatchSeconds(),
+                isStalled ? MIN_STALL_WAIT_SECONDS : 0);
+        loopTelemetry.setText(planSlot, String.format(Locale.US, "%s, %s park, %.1f s",
+                yellow[choice] ? "Purple & Yellow" : "Purple", corner[choice] ? "Square" : "Triangle", seconds[choice]));
+        return routeIndex(selected.ordinal(), isRed, isFar, corner[choice], isStalled, yellow[choice]);
+    }
+
+    /**
+     * @return Seconds left in autonomous, less TIME_MARGIN_SECONDS.
+     */
+    private double remainingMatchSeconds() {
+        return AUTONOMOUS_SECONDS - TIME_MARGIN_SECONDS - (clock.nanoTime() - matchStartNanos) / 1e9;
+    }
+
+    /**
+     * @return How long the stall wait at step i can be: as long as the route asks for, unless the
+     * rest of the route wouldn't fit in the time left.
+     */
+    private long stallWaitMs(CompiledRoute route, int routeIndex, int i) {
+        double spare = remainingMatchSeconds() - taskPlanner.remainingSeconds(routeIndex, route, i + 1);
+        return Math.max(0, Math.min(route.pauseMs[i], (long) (spare * 1000)));
+    }
+
+    /**
+     * @return The compiled route for these choices. Compiles it now if init didn't get to it.
+     */
+    protected CompiledRoute getRoute(FirstVisionProcessor.Selected selected, boolean isRed, boolean isFar,
+                                     boolean parkInCorner, boolean isStalled, boolean scoreYellowPixel) {
+        int i = routeIndex(selected.ordinal(), isRed, isFar, parkInCorner, isStalled, scoreYellowPixel);
+        if (routes[i] == null) {
+            routes[i] = compileRoute(buildRoute(selected, isRed, isFar, parkInCorner, isStalled, scoreYellowPixel), isRed);
+        }
+        return routes[i];
+    }
 
     /* PSEUDOCODE: Autonomous Parameters
 
@@ -570,7 +1039,8 @@ public class CenterStageAutonomous extends LinearOpMode {
      * 1) Move gets to the desired position
      * 2) Driver stops the opmode running.
      *
-     * @param maxDriveSpeed MAX Speed for forward/rev motion (range 0 to +1.0) .
+     * @param maxDriveSpeed MAX Speed for forward/rev motion (range 0 to +1.0). The motion profile
+     *                      turns it into ticks per second (see profileMaxVelocity()).
      * @param distance      Distance (in inches) to move from current position.  Negative distance means move backward.
      * @param heading       Absolute Heading Angle (in Degrees) relative to last gyro reset.
      *                      0 = fwd. +ve is CCW from fwd. -ve is CW from forward.
@@ -581,8 +1051,13 @@ public class CenterStageAutonomous extends LinearOpMode {
                               double heading,
                               boolean isMirrored) {
 
+        if (USE_MOTION_PROFILE) {
+            followPath(new Path().drive(maxDriveSpeed, distance, heading, isMirrored));
+            return;
+        }
+
         // Ensure that the opmode is still active
-        if (opModeIsActive()) {
+        if (isActive()) {
 
             if (isMirrored && isRed) {
                 heading *= -1;
@@ -592,13 +1067,13 @@ public class CenterStageAutonomous extends LinearOpMode {
             //heading = heading * reverseTurnsForAllianceColor;
 
             // Determine new target position, and pass to motor controller
-            double moveCompensation = 1.7; //Dear future Tekerz: Our robot needed this, yours might not
-            int moveCounts = (int) (((distance * moveCompensation) - 0.56) / inchesPerTick());
+            int moveCounts = moveCounts(distance);
 
-            leftTargetF = leftDriveF.getCurrentPosition() + moveCounts;
-            leftTargetB = leftDriveB.getCurrentPosition() + moveCounts;
-            rightTargetF = rightDriveF.getCurrentPosition() + moveCounts;
-            rightTargetB = rightDriveB.getCurrentPosition() + moveCounts;
+            readState();
+            leftTargetF = state.leftFrontPosition + moveCounts;
+            leftTargetB = state.leftBackPosition + moveCounts;
+            rightTargetF = state.rightFrontPosition + moveCounts;
+            rightTargetB = state.rightBackPosition + moveCounts;
 
 //            telemetry.addData("left front moved:", leftDriveF.getCurrentPosition());
 //            telemetry.addData("left back moved:", leftDriveB.getCurrentPosition());
@@ -621,7 +1096,7 @@ public class CenterStageAutonomous extends LinearOpMode {
             rightDriveB.setMode(DcMotor.RunMode.RUN_TO_POSITION);
 
             telemetry.addData("maxDriveSpeed", maxDriveSpeed);
-            telemetry.addData("active", opModeIsActive());
+            telemetry.addData("active", isActive());
             telemetry.addData("ldf", leftDriveF.isBusy());
             telemetry.addData("rdf", rightDriveF.isBusy());
             telemetry.addData("ldb", leftDriveB.isBusy());
@@ -634,33 +1109,34 @@ public class CenterStageAutonomous extends LinearOpMode {
             maxDriveSpeed = Math.abs(maxDriveSpeed);
             moveRobot(maxDriveSpeed, 0);
 
-            // keep looping while we are still active, and BOTH motors are running.
-            while (opModeIsActive() && !isStopRequested()) {
-
-                telemetry.addData("driveStraight", "opModeIsActive and all motors are busy!");
+            // keep looping while we are still active, and the robot hasn't arrived (or stalled).
+            startLoop();
+            long startNanos = state.timestampNanos;
+            driveCompletion.start(Math.abs(moveCounts) / (Math.max(maxDriveSpeed, 0.1) * DRIVE_MAX_TICKS_PER_SECOND)
+                    + DRIVE_TIMEOUT_MARGIN);
+            while (isActive()) {
 
                 // Determine required steering to keep on heading
-                turnSpeed = getSteeringCorrection(heading, P_DRIVE_GAIN);
+                turnSpeed = getSteeringCorrection(heading, driveController);
 
                 // if driving in reverse, the motor correction also needs to be reversed
                 if (distance < 0)
                     turnSpeed *= -1.0;
+                loopTimer.mark(LoopTimer.COMPUTE);
 
                 // Apply the turning correction to the current driving speed.
                 moveRobot(driveSpeed, turnSpeed);
 
-                mechanismLoop();
-
-                // Display drive status for the driver.
-                sendTelemetry(true);
-
-                clearBulkCache();
+                periodic(true);
 
-                // Check if ALL motors report not busy
-                if (!(leftDriveF.isBusy() || rightDriveF.isBusy() || leftDriveB.isBusy() || rightDriveB.isBusy())) {
+                // Done once the wheels have stopped at the target. isBusy() can't be trusted right after
+                // the mode switch, and one dragging wheel keeps it true long after the robot has arrived.
+                double t = (state.timestampNanos - startNanos) / 1e9;
+                if (driveCompletion.update(t, drivePositionError(), driveWheelSpeed()) != MotionCompletion.MOVING) {
                     break;
                 }
             }
+            reportCompletion(driveCompletion.getResult());
 
             // Stop all motion & Turn off RUN_TO_POSITION
             moveRobot(0, 0);
@@ -671,11 +1147,404 @@ public class CenterStageAutonomous extends LinearOpMode {
         }
     }
 
+    /**
+     * @return How many encoder counts the drive wheels have to turn to go distance inches.
+     */
+    private int moveCounts(double distance) {
+        double moveCompensation = 1.7; //Dear future Tekerz: Our robot needed this, yours might not
+        return (int) (((distance * moveCompensation) - 0.56) / inchesPerTick());
+    }
+
+    /**
+     * Drives a whole Path without stopping between segments (unless it has a pause()).
+     * Plans it first; use followRoute() with a route from compileRoute() to plan ahead of time.
+     */
+    public void followPath(Path path) {
+        followRoute(compileRoute(path, isRed));
+    }
+
+    /**
+     * Does all the planning for a path: mirrors the headings, works out the encoder counts, decides
+     * which drives get joined into one profile and where to settle, and builds the profiles.
+     *
+     * Back-to-back drives in the same direction are joined into one motion profile, so the robot
+     * keeps its speed through the heading change between them. A turn that leads into a drive only
+     * has to get within TURN_BLEND_DEGREES; the drive finishes the turn while it gets moving.
+     * Only the last drive before a stop (pause, deliver, the end of the path, or a drive back the
+     * other way) settles on its position.
+     *
+     * @param red Mirror the headings of the isMirrored segments, like isRed does for driveStraight().
+     */
+    protected CompiledRoute compileRoute(Path path, boolean red) {
+        List<Path.Segment> segments = path.getSegments();
+        CompiledRoute route = new CompiledRoute(segments.size());
+
+        for (int i = 0; i < route.size; i++) {
+            Path.Segment segment = segments.get(i);
+            route.type[i] = segment.type;
+            route.speed[i] = segment.speed;
+            route.distance[i] = segment.distance;
+            route.counts[i] = moveCounts(segment.distance);
+            route.heading[i] = (segment.isMirrored && red) ? -segment.heading : segment.heading;
+            route.pauseMs[i] = segment.pauseMs;
+            route.moveX[i] = segment.dx;
+            route.moveY[i] = (segment.isMirrored && red) ? -segment.dy : segment.dy;
+            if (segment.type == Path.MOVE) {
+                route.profiles[i] = new MotionProfile(Math.hypot(route.moveX[i], route.moveY[i]),
+                        segment.speed * MOVE_MAX_VELOCITY, MOVE_MAX_ACCELERATION, MOVE_MAX_JERK);
+            }
+        }
+
+        for (int i = 0; i < route.size; i++) {
+            int nextType = i + 1 < route.size ? route.type[i + 1] : Path.PAUSE;
+            if (route.type[i] == Path.TURN) {
+                route.tolerance[i] = TURN_BLEND_DEGREES;
+                route.settle[i] = nextType != Path.DRIVE;
+            } else if (route.type[i] == Path.DRIVE) {
+                boolean joined = nextType == Path.DRIVE
+                        && Math.signum(route.distance[i + 1]) == Math.signum(route.distance[i]);
+                // A drive that backs straight out the way it came has to stop first
+                boolean reverses = nextType == Path.DRIVE && !joined;
+                route.settle[i] = nextType == Path.PAUSE || nextType == Path.DELIVER || nextType == Path.WAIT
+                        || reverses;
+                route.lastJoined[i] = i;
+                if (joined) route.lastJoined[i] = i + 1;
+            }
+        }
+
+        // Follow the joins to the end of each group, and build one profile per group
+        for (int i = route.size - 1; i >= 0; i--) {
+            if (route.type[i] == Path.DRIVE && route.lastJoined[i] != i) {
+                route.lastJoined[i] = route.lastJoined[route.lastJoined[i]];
+            }
+        }
+        for (int i = 0; i < route.size; i++) {
+            if (route.type[i] == Path.DRIVE && (i == 0 || route.type[i - 1] != Path.DRIVE || route.lastJoined[i - 1] != route.lastJoined[i])) {
+                int moveCounts = 0;
+                double speed = route.speed[i];
+                for (int j = i; j <= route.lastJoined[i]; j++) {
+                    moveCounts += route.counts[j];
+                    speed = Math.min(speed, route.speed[j]);
+                }
+                route.profiles[i] = new MotionProfile(moveCounts,
+                        profileMaxVelocity(speed), PROFILE_MAX_ACCELERATION, PROFILE_MAX_JERK);
+            }
+        }
+        return route;
+    }
+
+    /**
+     * @param maxDriveSpeed The drive's speed, as a fraction of full power like driveStraight() takes.
+     * @return The top speed for its profile, in ticks per second. A group of joined drives goes at
+     * the slowest one's speed. Never more than PROFILE_MAX_VELOCITY.
+     */
+    static double profileMaxVelocity(double maxDriveSpeed) {
+        return Math.min(Math.abs(maxDriveSpeed) * DRIVE_MAX_TICKS_PER_SECOND, PROFILE_MAX_VELOCITY);
+    }
+
+    /**
+     * Drives a compiled route. Drives are motion profiled (see MotionProfile) and followed in
+     * RUN_USING_ENCODER: every cycle the wheels get the power the profile needs (feedforward),
+     * plus a correction for how far behind or ahead of the profile they are (feedback).
+     *
+     * With USE_MOTION_PROFILE off, this just runs driveStraight() and turnToHeading() one after another.
+     */
+    public void followRoute(CompiledRoute route) {
+        followRoute(route, -1);
+    }
+
+    /**
+     * @param routeIndex Where the route is in routes (see routeIndex()), so each step's time goes
+     *                   into the TaskPlanner's history. -1 for a route that isn't one of those.
+     */
+    public void followRoute(CompiledRoute route, int routeIndex) {
+        if (!USE_MOTION_PROFILE) {
+            for (int i = 0; i < route.size; i++) {
+                // Headings are already mirrored
+                if (route.type[i] == Path.DRIVE) {
+                    driveStraight(route.speed[i], route.distance[i], route.heading[i], notMirrored);
+                } else if (route.type[i] == Path.TURN) {
+                    turnToHeading(route.speed[i], route.heading[i], notMirrored);
+                } else if (route.type[i] == Path.DELIVER) {
+                    deliverPixel();
+                } else if (route.type[i] == Path.MOVE) {
+                    // Turn, drive, turn, the way it used to be done
+                    double direction = Math.toDegrees(Math.atan2(route.moveY[i], route.moveX[i]));
+                    turnToHeading(TURN_SPEED, direction, notMirrored);
+                    driveStraight(DRIVE_SPEED, Math.hypot(route.moveX[i], route.moveY[i]), direction, notMirrored);
+                    turnToHeading(TURN_SPEED, route.heading[i], notMirrored);
+                } else if (route.type[i] == Path.WAIT) {
+                    moveRobot(0, 0);
+                    sleep(stallWaitMs(route, routeIndex, i));
+                } else {
+                    moveRobot(0, 0);
+                    sleep(route.pauseMs[i]);
+                }
+            }
+            return;
+        }
+
+        leftDriveF.setMode(DcMotor.RunMode.RUN_USING_ENCODER);
+        leftDriveB.setMode(DcMotor.RunMode.RUN_USING_ENCODER);
+        rightDriveF.setMode(DcMotor.RunMode.RUN_USING_ENCODER);
+        rightDriveB.setMode(DcMotor.RunMode.RUN_USING_ENCODER);
+        startLoop();
+
+        int i = 0;
+        while (i < route.size && isActive()) {
+            int step = i;
+            long stepStartNanos = state.timestampNanos;
+            int next = route.type[i] == Path.DRIVE ? route.lastJoined[i] + 1 : i + 1;
+            if (RAISE_ARM_WHILE_DRIVING && next < route.size && route.type[next] == Path.DELIVER
+                    && route.type[i] != Path.PAUSE && route.type[i] != Path.WAIT) {
+                // Start raising the arm now, so it's up by the time we get to the backdrop
+                commandScheduler.schedule(raiseArmCommand());
+            }
+
+            if (route.type[i] == Path.TURN) {
+                followTurn(route.speed[i], route.heading[i], route.tolerance[i], route.settle[i]);
+                i++;
+            } else if (route.type[i] == Path.PAUSE) {
+                followPause(route.pauseMs[i]);
+                i++;
+            } else if (route.type[i] == Path.WAIT) {
+                followPause(stallWaitMs(route, routeIndex, i));
+                i++;
+            } else if (route.type[i] == Path.DELIVER) {
+                moveRobot(0, 0);
+                deliverPixel();
+                i++;
+            } else if (route.type[i] == Path.MOVE) {
+                followMove(route, i);
+                i++;
+            } else {
+                int last = route.lastJoined[i];
+                followDrives(route, i, last);
+                i = last + 1;
+            }
+
+            // Stall waits change length, so only the other steps are worth remembering
+            if (routeIndex >= 0 && route.type[step] != Path.WAIT && isActive()) {
+                taskPlanner.record(routeIndex, step, (state.timestampNanos - stepStartNanos) / 1e9);
+            }
+        }
+
+        // Stop all motion
+        moveRobot(0, 0);
+    }
+
+    /**
+     * Pivots towards heading until the turn controller settles, or (if settle is false) just until
+     * it's within tolerance degrees, or the turn times out (see turnCompletion()). Doesn't stop afterwards.
+     */
+    private void followTurn(double maxTurnSpeed, double heading, double tolerance, boolean settle) {
+        getSteeringCorrection(heading, turnController);
+        double timeout = turnTimeout();
+        long startNanos = state.timestampNanos;
+
+        while (isActive()
+                && turnCompletion((state.timestampNanos - startNanos) / 1e9, timeout, settle, tolerance) == MotionCompletion.MOVING) {
+            turnSpeed = Range.clip(getSteeringCorrection(heading, turnController), -maxTurnSpeed, maxTurnSpeed);
+            loopTimer.mark(LoopTimer.COMPUTE);
+
+            moveRobot(0, turnSpeed);
+
+            periodic(false);
+        }
+    }
+
+    /**
+     * @return How long the turn to the current targetHeading should get before falling back to
+     * HEADING_THRESHOLD. Call it after getSteeringCorrection(), so headingError is up to date.
+     */
+    private double turnTimeout() {
+        return Math.abs(headingError) / TaskPlanner.TURN_DEGREES_PER_SECOND + TURN_TIMEOUT_MARGIN;
+    }
+
+    /**
+     * Decides when a turn is over. On carpet, or with a tired battery, the turn controller might
+     * never settle, so after the timeout the old HEADING_THRESHOLD is good enough, and after
+     * TURN_GIVE_UP_FACTOR times the timeout the turn ends wherever it got to.
+     *
+     * @param t      Seconds since the turn started.
+     * @param settle Wait for the turn controller to settle, or just for tolerance degrees.
+     * @return MOVING, ARRIVED (settled or within tolerance), TIMED_OUT (ended on HEADING_THRESHOLD),
+     *         or STALLED (gave up). Anything but MOVING is also shown on the telemetry.
+     */
+    private int turnCompletion(double t, double timeout, boolean settle, double tolerance) {
+        int completion = MotionCompletion.MOVING;
+        if (settle ? turnController.isSettled() : Math.abs(headingError) <= tolerance) {
+            completion = MotionCompletion.ARRIVED;
+        } else if (t >= timeout && Math.abs(headingError) < HEADING_THRESHOLD) {
+            completion = MotionCompletion.TIMED_OUT;
+        } else if (t >= TURN_GIVE_UP_FACTOR * timeout) {
+            completion = MotionCompletion.STALLED;
+        }
+        if (completion != MotionCompletion.MOVING) {
+            if (completion != MotionCompletion.ARRIVED) turnTimeouts++;
+            loopTelemetry.setText(turnEndSlot, MotionCompletion.NAMES[completion] + " (timeouts: " + turnTimeouts + ")");
+        }
+        return completion;
+    }
+
+    /**
+     * Moves and turns at the same time with the mecanum wheels, using the Localizer pose (see HolonomicController).
+     * Always settles on the target, since the next segment expects to start from it.
+     */
+    private void followMove(CompiledRoute route, int i) {
+        MotionProfile profile = route.profiles[i];
+        holonomicController.start(profile, route.moveX[i], route.moveY[i], route.heading[i],
+                localizer.getX(), localizer.getY(), localizer.getHeading());
+
+        // getSteeringCorrection() isn't used here, so SteeringReplay skips these cycles
+        targetHeading = Double.NaN;
+        double[] powers = holonomicPowers;
+        long startNanos = state.timestampNanos;
+        moveCompletion.start(profile.getDuration() + PROFILE_SETTLE_TIMEOUT);
+
+        while (isActive()) {
+            double t = (state.timestampNanos - startNanos) / 1e9;
+            holonomicController.update(t, localizer.getX(), localizer.getY(), localizer.getHeading(), powers);
+
+            int completion = moveCompletion.update(t, holonomicController.getPositionError(),
+                    driveWheelSpeed() / TRUE_COUNTS_PER_INCH);
+            if (completion == MotionCompletion.STALLED || completion == MotionCompletion.TIMED_OUT
+                    || (t >= profile.getDuration() && completion == MotionCompletion.ARRIVED
+                    && Math.abs(holonomicController.getHeadingError()) < HEADING_THRESHOLD)) {
+                break;
+            }
+
+            headingError = holonomicController.getHeadingError();
+            driveSpeed = holonomicController.getForwardPower();
+            turnSpeed = holonomicController.getTurnPower();
+            loopTimer.mark(LoopTimer.COMPUTE);
+
+            moveRobotHolonomic(powers);
+
+            periodic(false);
+        }
+        reportCompletion(moveCompletion.getResult());
+        moveRobot(0, 0);
+    }
+
+    /**
+     * Stops the robot and waits, still running the mechanisms and telemetry every cycle.
+     */
+    private void followPause(long milliseconds) {
+        long startNanos = state.timestampNanos;
+        moveRobot(0, 0);
+        do {
+            loopTimer.mark(LoopTimer.COMPUTE);
+            periodic(false);
+        } while (isActive()
+                && (state.timestampNanos - startNanos) / 1e6 < milliseconds);
+    }
+
+    /**
+     * Drives segments first to last of a route (all in the same direction) along their shared profile.
+     * The heading to hold switches to the next segment's when the robot passes into it. Gives up on
+     * the rest of the group if the wheels stall (see MotionCompletion).
+     */
+    private void followDrives(CompiledRoute route, int first, int last) {
+        MotionProfile profile = route.profiles[first];
+        boolean settle = route.settle[last];
+        int moveCounts = (int) profile.getDistance();
+
+        double startPosition = averageDrivePosition();
+        leftTargetF = state.leftFrontPosition + moveCounts;
+        leftTargetB = state.leftBackPosition + moveCounts;
+        rightTargetF = state.rightFrontPosition + moveCounts;
+        rightTargetB = state.rightBackPosition + moveCounts;
+
+        int segment = first;
+        double segmentEnd = route.counts[first];
+        double t = 0;   // time along the profile, which runs slower while the robot is turning hard
+        double cornerScale = 1;
+        long startNanos = state.timestampNanos;
+        long lastNanos = state.timestampNanos;
+        // The stall check runs on real time; the timeout is checked below against profile time
+        driveCompletion.start(Double.POSITIVE_INFINITY);
+        int completion = MotionCompletion.MOVING;
+
+        while (isActive()) {
+            t += (state.timestampNanos - lastNanos) / 1e9 * cornerScale;
+            lastNanos = state.timestampNanos;
+
+            double travelled = averageDrivePosition() - startPosition;
+            double positionError = profile.getPosition(t) - travelled;
+
+            completion = driveCompletion.update((state.timestampNanos - startNanos) / 1e9, positionError, driveWheelSpeed());
+            if (completion == MotionCompletion.STALLED) {
+                break;
+            }
+            if (t >= profile.getDuration()
+                    && (!settle
+                    || completion == MotionCompletion.ARRIVED
+                    || t >= profile.getDuration() + PROFILE_SETTLE_TIMEOUT)) {
+                if (settle && completion == MotionCompletion.MOVING) completion = MotionCompletion.TIMED_OUT;
+                break;
+            }
+
+            // Move on to the next segment's heading once we've driven past the end of this one
+            while (segment < last && Math.abs(travelled) >= Math.abs(segmentEnd)) {
+                segment++;
+                segmentEnd += route.counts[segment];
+            }
+
+            // Determine required steering to keep on heading. Unlike RUN_TO_POSITION, the power
+            // signs are used as they are, so the correction doesn't need flipping when reversing.
+            turnSpeed = getSteeringCorrection(route.heading[segment], driveController);
+
+            // Slow the profile down while a big heading change is still being made, so the
+            // robot doesn't run off line through the corner
+            cornerScale = Range.clip(1 - Math.abs(headingError) / CORNER_SLOWDOWN_DEGREES, MIN_CORNER_SCALE, 1);
+
+            double drive = cornerScale * (K_V * profile.getVelocity(t)
+                    + cornerScale * K_A * profile.getAcceleration(t)) + K_P * positionError;
+            loopTimer.mark(LoopTimer.COMPUTE);
+
+            moveRobot(drive, turnSpeed);
+
+            periodic(true);
+        }
+        if (settle || completion == MotionCompletion.STALLED) reportCompletion(completion);
+    }
+
+    /**
+     * @return How far the drive wheels are from their targets on average, in ticks.
+     */
+    private double drivePositionError() {
+        return ((leftTargetF - state.leftFrontPosition) + (leftTargetB - state.leftBackPosition)
+                + (rightTargetF - state.rightFrontPosition) + (rightTargetB - state.rightBackPosition)) / 4.0;
+    }
+
+    /**
+     * @return How fast the drive wheels are turning on average, in ticks per second, from the bulk read.
+     */
+    private double driveWheelSpeed() {
+        return MotionCompletion.averageSpeed(state.leftFrontVelocity, state.leftBackVelocity,
+                state.rightFrontVelocity, state.rightBackVelocity);
+    }
+
+    /**
+     * Shows how the last drive or move ended, and counts the stalls.
+     */
+    private void reportCompletion(int result) {
+        if (result == MotionCompletion.STALLED) driveStalls++;
+        loopTelemetry.setText(driveEndSlot, MotionCompletion.NAMES[result] + " (stalls: " + driveStalls + ")");
+    }
+
+    private double averageDrivePosition() {
+        return (state.leftFrontPosition + state.leftBackPosition
+                + state.rightFrontPosition + state.rightBackPosition) / 4.0;
+    }
+
     /**
      * Method to spin on central axis to point in a new direction.
-     * Move will stop if either of these conditions occur:
+     * Move will stop if any of these conditions occur:
      * 1) Move gets to the heading (angle)
-     * 2) Driver stops the opmode running.
+     * 2) The turn times out (see turnCompletion())
+     * 3) Driver stops the opmode running.
      *
      * @param maxTurnSpeed Desired MAX speed of turn. (range 0 to +1.0)
      * @param heading      Absolute Heading Angle (in Degrees) relative to last gyro reset.
@@ -690,26 +1559,26 @@ public class CenterStageAutonomous extends LinearOpMode {
         }
 
         // Run getSteeringCorrection() once to pre-calculate the current error
-        getSteeringCorrection(heading, P_DRIVE_GAIN);
+        startLoop();
+        getSteeringCorrection(heading, turnController);
+        double timeout = turnTimeout();
+        long startNanos = state.timestampNanos;
 
-        // keep looping while we are still active, and not on heading.
-        while ((opModeIsActive() && !isStopRequested()) && (Math.abs(headingError) > HEADING_THRESHOLD)) {
+        // keep looping while we are still active, and not settled on the heading (see turnCompletion()).
+        while (isActive()
+                && turnCompletion((state.timestampNanos - startNanos) / 1e9, timeout, true, 0) == MotionCompletion.MOVING) {
 
             // Determine required steering to keep on heading
-            turnSpeed = getSteeringCorrection(heading, P_TURN_GAIN);
+            turnSpeed = getSteeringCorrection(heading, turnController);
 
             // Clip the speed to the maximum permitted value.
             turnSpeed = Range.clip(turnSpeed, -maxTurnSpeed, maxTurnSpeed);
+            loopTimer.mark(LoopTimer.COMPUTE);
 
             // Pivot in place by applying the turning correction
             moveRobot(0, turnSpeed);
 
-            mechanismLoop();
-
-            // Display drive status for the driver.
-            sendTelemetry(false);
-
-            clearBulkCache();
+            periodic(false);
         }
 
         // Stop all motion;
@@ -737,23 +1606,19 @@ public class CenterStageAutonomous extends LinearOpMode {
         }
 
         // keep looping while we have time remaining.
-        while ((opModeIsActive() && !isStopRequested()) && (holdTimer.time() < holdTime)) {
+        startLoop();
+        while (isActive() && (holdTimer.time() < holdTime)) {
             // Determine required steering to keep on heading
-            turnSpeed = getSteeringCorrection(heading, P_TURN_GAIN);
+            turnSpeed = getSteeringCorrection(heading, turnController);
 
             // Clip the speed to the maximum permitted value.
             turnSpeed = Range.clip(turnSpeed, -maxTurnSpeed, maxTurnSpeed);
+            loopTimer.mark(LoopTimer.COMPUTE);
 
             // Pivot in place by applying the turning correction
             moveRobot(0, turnSpeed);
 
-            mechanismLoop();
-
-            // Display drive status for the driver.
-            sendTelemetry(false);
-
-            clearBulkCache();
-
+            periodic(false);
         }
 
         // Stop all motion;
@@ -763,27 +1628,40 @@ public class CenterStageAutonomous extends LinearOpMode {
     // **********  LOW Level driving functions.  ********************
 
     /**
-     * This method uses a Proportional Controller to determine how much steering correction is required.
+     * This method uses a PIDF Controller to determine how much steering correction is required.
+     * Call it at most once per cycle; calling it again in the same cycle returns the same answer.
      *
-     * @param desiredHeading   The desired absolute heading (relative to last heading reset)
-     * @param proportionalGain Gain factor applied to heading error to obtain turning power.
+     * @param desiredHeading The desired absolute heading (relative to last heading reset)
+     * @param controller     turnController or driveController. It starts over when the controller
+     *                       or the heading changes.
      * @return Turning power needed to get to required heading.
      */
-    public double getSteeringCorrection(double desiredHeading, double proportionalGain) {
+    public double getSteeringCorrection(double desiredHeading, PidfController controller) {
+        boolean restart = controller != steeringController || desiredHeading != targetHeading;
+        double dt = (state.timestampNanos - lastSteeringNanos) / 1e9;
+        if (!restart && dt == 0) {
+            return steeringCorrection;
+        }
+        if (restart || dt > DriveControl.MAX_STEERING_GAP_SECONDS) {
+            controller.reset();
+            dt = 0;
+        }
+        steeringController = controller;
+        lastSteeringNanos = state.timestampNanos;
         targetHeading = desiredHeading;  // Save for telemetry
 
-        // Get the robot heading by applying an offset to the IMU heading
-        robotHeading = getRawHeading() - headingOffset;
+        // Get the robot heading by applying an offset to the IMU heading read at the start of this cycle
+        robotHeading = state.yaw - headingOffset;
 
-        // Determine the heading current error
-        headingError = targetHeading - robotHeading;
+        // Determine the heading current error, normalized to be within +/- 180 degrees
+        headingError = DriveControl.headingError(targetHeading, robotHeading);
 
-        // Normalize the error to be within +/- 180 degrees
-        while (headingError > 180) headingError -= 360;
-        while (headingError <= -180) headingError += 360;
-
-        // Multiply the error by the gain to determine the required steering correction/  Limit the result to +/- 1.0
-        return Range.clip(headingError * proportionalGain, -1, 1);
+        // The IMU's yaw rate is used for the D term. The result is limited to +/- 1.0.
+        // Saved so the cycle log can be replayed through the same math (see SteeringReplay)
+        steeringCorrection = controller.update(headingError, state.yawRate, dt);
+        steeringGain = controller.getKP();
+        steeringIntegral = controller.getIntegral();
+        return steeringCorrection;
     }
 
     /**
@@ -797,15 +1675,14 @@ public class CenterStageAutonomous extends LinearOpMode {
         driveSpeed = drive;     // save this value as a class member so it can be used by telemetry.
         turnSpeed = turn;      // save this value as a class member so it can be used by telemetry.
 
-        leftSpeed = drive - turn;
-        rightSpeed = drive + turn;
-
         // Scale speeds down if either one exceeds +/- 1.0;
-        double max = Math.max(Math.abs(leftSpeed), Math.abs(rightSpeed));
-        if (max > 1.0) {
-            leftSpeed /= max;
-            rightSpeed /= max;
-        }
+        DriveControl.tankPowers(drive, turn, wheelSpeeds);
+        leftSpeed = wheelSpeeds[0];
+        rightSpeed = wheelSpeeds[1];
+        wheelPowers[MecanumKinematics.LEFT_FRONT] = leftSpeed;
+        wheelPowers[MecanumKinematics.LEFT_BACK] = leftSpeed;
+        wheelPowers[MecanumKinematics.RIGHT_FRONT] = rightSpeed;
+        wheelPowers[MecanumKinematics.RIGHT_BACK] = rightSpeed;
 
         leftDriveF.setPower(leftSpeed);
         leftDriveB.setPower(leftSpeed);
@@ -813,12 +1690,20 @@ public class CenterStageAutonomous extends LinearOpMode {
         rightDriveB.setPower(rightSpeed);
     }
 
-    protected void clearBulkCache() {
-        // Clears the cache so that it will be refreshed the next time you ask for a sensor value!
-        // Be very sure that this gets called in every loop in your code!!!!
-        for (LynxModule hub : allHubs) {
-            hub.clearBulkCache();
-        }
+    /**
+     * Sends wheel powers worked out by HolonomicController (or anything else that drives each wheel separately).
+     *
+     * @param powers Indexed like MecanumKinematics.
+     */
+    public void moveRobotHolonomic(double[] powers) {
+        System.arraycopy(powers, 0, wheelPowers, 0, 4);
+        leftSpeed = powers[MecanumKinematics.LEFT_FRONT];
+        rightSpeed = powers[MecanumKinematics.RIGHT_FRONT];
+
+        leftDriveF.setPower(powers[MecanumKinematics.LEFT_FRONT]);
+        leftDriveB.setPower(powers[MecanumKinematics.LEFT_BACK]);
+        rightDriveF.setPower(powers[MecanumKinematics.RIGHT_FRONT]);
+        rightDriveB.setPower(powers[MecanumKinematics.RIGHT_BACK]);
     }
 
     /**
@@ -827,35 +1712,66 @@ public class CenterStageAutonomous extends LinearOpMode {
      * @param straight Set to true if we are driving straight, and the encoder positions should be included in the telemetry.
      */
     private void sendTelemetry(boolean straight) {
+        // This runs every cycle, so it only stores numbers. loopTelemetry formats and sends them when it's time.
         if (straight) {
-            telemetry.addData("Motion", "Drive Straight");
-            telemetry.addData("Target Pos LF:RF:LB:RB", "%7d:%7d:%7d:%7d",
-                    leftTargetF, rightTargetF, leftTargetB, rightTargetB);
-            telemetry.addData("Actual Pos LF:RF:LB:RB", "%7d:%7d:%7d:%7d", leftDriveF.getCurrentPosition(),
-                    rightDriveF.getCurrentPosition(), leftDriveB.getCurrentPosition(), rightDriveB.getCurrentPosition());
+            loopTelemetry.setText(motionSlot, "Drive Straight");
+            loopTelemetry.set(targetPosSlot, leftTargetF, rightTargetF, leftTargetB, rightTargetB);
+            loopTelemetry.set(actualPosSlot, state.leftFrontPosition,
+                    state.rightFrontPosition, state.leftBackPosition, state.rightBackPosition);
         } else {
-            telemetry.addData("Motion", "Turning");
+            loopTelemetry.setText(motionSlot, "Turning");
         }
 
-        telemetry.addData("Angle Target:Current", "%5.2f:%5.0f", targetHeading, robotHeading);
-        telemetry.addData("Error:Steer", "%5.1f:%5.1f", headingError, turnSpeed);
-        telemetry.addData("Wheel Speeds L:R.", "%5.2f : %5.2f", leftSpeed, rightSpeed);
+        loopTelemetry.set(angleSlot, targetHeading, robotHeading);
+        loopTelemetry.set(errorSteerSlot, headingError, turnSpeed);
+        loopTelemetry.set(wheelSpeedSlot, leftSpeed, rightSpeed);
+        loopTelemetry.set(poseSlot, localizer.getX(), localizer.getY(), localizer.getHeading());
 
         //checks the time spent on the loop and adds it to telemetry
 
-        telemetry.addData("Loop Time", (int) runtime.milliseconds());
+        loopTelemetry.set(loopTimeSlot, runtime.milliseconds());
+        loopTelemetry.set(loopPeriodSlot, loopScheduler.getLastPeriodMs(), loopScheduler.getMaxJitterMs());
+        loopTelemetry.set(overrunSlot, loopScheduler.getOverrunCount());
+        loopTelemetry.set(writesSavedSlot, CachingMotor.getTotalWritesSaved(), ServoController.getTotalWritesSaved());
+        loopTelemetry.set(imuSlot, imuSampler.getErrorCount(), imuStaleCycles, imuSampler.getRestartCount());
+        if (loopTelemetry.isDue()) {
+            // Working out percentiles isn't free, so only do it when they'll actually be sent
+            loopTimer.addTelemetry(telemetry);
+        }
 
         runtime.reset();
 
-        telemetry.update();
+        loopTelemetry.update();
+    }
+
+    /**
+     * Reserve the loopTelemetry lines used by sendTelemetry()
+     */
+    private void setupLoopTelemetry() {
+        motionSlot = loopTelemetry.addSlot("Motion", null);
+        targetPosSlot = loopTelemetry.addSlot("Target Pos LF:RF:LB:RB", "%7.0f:%7.0f:%7.0f:%7.0f");
+        actualPosSlot = loopTelemetry.addSlot("Actual Pos LF:RF:LB:RB", "%7.0f:%7.0f:%7.0f:%7.0f");
+        angleSlot = loopTelemetry.addSlot("Angle Target:Current", "%5.2f:%5.0f");
+        errorSteerSlot = loopTelemetry.addSlot("Error:Steer", "%5.1f:%5.1f");
+        wheelSpeedSlot = loopTelemetry.addSlot("Wheel Speeds L:R.", "%5.2f : %5.2f");
+        poseSlot = loopTelemetry.addSlot("Pose X:Y:Heading", "%5.1f:%5.1f:%5.0f");
+        driveEndSlot = loopTelemetry.addSlot("Last Drive", null, true);
+        turnEndSlot = loopTelemetry.addSlot("Last Turn", null, true);
+        planSlot = loopTelemetry.addSlot("Plan", null, true);
+        cameraSlot = loopTelemetry.addSlot("Camera", null, true);
+        loopTimeSlot = loopTelemetry.addSlot("Loop Time", "%.0f");
+        loopPeriodSlot = loopTelemetry.addSlot("Loop Period:Jitter(max)", "%4.1f:%4.1f ms");
+        overrunSlot = loopTelemetry.addSlot("Loop Overruns", "%.0f");
+        writesSavedSlot = loopTelemetry.addSlot("Writes Saved Motor:Servo", "%.0f:%.0f");
+        imuSlot = loopTelemetry.addSlot("IMU Errors:Stale Cycles:Restarts", "%.0f:%.0f:%.0f");
     }
 
     /**
-     * read the raw (un-offset Gyro heading) directly from the IMU
+     * read the raw (un-offset Gyro heading) from this cycle's RobotState. This never waits on the IMU.
      */
     public double getRawHeading() {
-        YawPitchRollAngles orientation = imu.getRobotYawPitchRollAngles();
-        double botHeading = orientation.getYaw(AngleUnit.DEGREES);
+        // The state's reading has already been checked for being out of date (see RobotState.Reader)
+        double botHeading = state != null ? state.yaw : imuSampler.getLatest().yaw;
         // + 180.0; // +/- 180 to flip heading
         return botHeading;
     }
@@ -912,16 +1828,64 @@ public class CenterStageAutonomous extends LinearOpMode {
      * Sets all servos & arm to delivery position, then delivers pixel.
      */
     public void deliverPixel() {
-        setDoorPosition(0);
-        setArmPosition(2);
-        while ((SwingArm.armMotor.getCurrentPosition() > 1500) && (opModeIsActive() && !isStopRequested())) {
-            mechanismLoop();
+        runCommand(deliverPixelCommand());
+    }
+
+    /**
+     * Raises the arm, drops the pixel and puts the arm back down. The arm doesn't have to be
+     * down when the command finishes, so the robot can drive away while it lowers.
+     */
+    protected Command deliverPixelCommand() {
+        return new Command.Sequential(
+                raiseArmCommand(),
+                new Command.Instant(new Runnable() {
+                    @Override
+                    public void run() {
+                        setDoorPosition(2);
+                    }
+                }),
+                new Command.Wait(DOOR_OPEN_SECONDS),
+                new Command.Instant(new Runnable() {
+                    @Override
+                    public void run() {
+                        resetArm();
+                    }
+                }));
+    }
+
+    /**
+     * Closes the door and raises the arm to the delivery position. Finishes once the arm is
+     * there, or after ARM_RAISE_TIMEOUT if it never quite makes it.
+     */
+    protected Command raiseArmCommand() {
+        return new Command.Sequential(
+                new Command.Instant(new Runnable() {
+                    @Override
+                    public void run() {
+                        setDoorPosition(0);
+                        setArmPosition(2);
+                    }
+                }),
+                new Command.WaitUntil(new Command.Condition() {
+                    @Override
+                    public boolean isTrue() {
+                        return Math.abs(state.armPosition - swingArm.getTargetPosition()) < ARM_POSITION_TOLERANCE;
+                    }
+                })).withTimeout(ARM_RAISE_TIMEOUT);
+    }
+
+    /**
+     * Runs a command until it finishes, keeping the robot still and the loop going.
+     */
+    protected void runCommand(Command command) {
+        commandScheduler.schedule(command);
+        // getSteeringCorrection() isn't used here, so SteeringReplay skips these cycles
+        targetHeading = Double.NaN;
+        startLoop();
+        while (isActive() && commandScheduler.isScheduled(command)) {
+            loopTimer.mark(LoopTimer.COMPUTE);
+            periodic(false);
         }
-        mechanismLoop();
-        sleep(2000);
-        setDoorPosition(2);
-        sleep(500);
-        resetArm();
     }
 
     /**
@@ -30,17 +30,20 @@
 package org.firstinspires.ftc.teamcode;
 
 import com.qualcomm.ftccommon.SoundPlayer;
+import com.qualcomm.hardware.lynx.LynxModule;
 import com.qualcomm.hardware.rev.RevHubOrientationOnRobot;
 import com.qualcomm.robotcore.eventloop.opmode.LinearOpMode;
 import com.qualcomm.robotcore.eventloop.opmode.TeleOp;
 import com.qualcomm.robotcore.hardware.DcMotor;
+import com.qualcomm.robotcore.hardware.DcMotorEx;
 import com.qualcomm.robotcore.hardware.IMU;
 import com.qualcomm.robotcore.util.ElapsedTime;
 
-import org.firstinspires.ftc.robotcore.external.navigation.AngleUnit;
-import org.firstinspires.ftc.robotcore.external.navigation.YawPitchRollAngles;
+import org.firstinspires.ftc.robotcore.internal.system.AppUtil;
 
 import java.io.File;
+import java.io.IOException;
+import java.util.List;
 
 /*
  * This file is heavily derived from the following samples; refer back to them for original source:
@@ -81,22 +84,43 @@ public class CenterStageTeleOp extends LinearOpMode {
 
     private final ElapsedTime runtime = new ElapsedTime();
 
+    // Times the sense/compute/actuate/telemetry parts of each loop
+    private final LoopTimer loopTimer = new LoopTimer();
+
+    // Drive power changes smaller than this aren't worth a USB transaction.
+    static final double DRIVE_POWER_EPSILON = 0.005;
+
     @Override
     public void runOpMode() {
 
         // Initialize the hardware variables. Note that the strings used here must correspond
         // to the names assigned during the robot configuration step on the DS or RC devices.
         // Note: The names here do not match the hardware names -- this should be fixed in the configuration.
-        DcMotor backRightDrive = hardwareMap.get(DcMotor.class, "right_driveB");
-        DcMotor frontRightDrive = hardwareMap.get(DcMotor.class, "right_driveF");
-        DcMotor frontLeftDrive = hardwareMap.get(DcMotor.class, "left_driveF");
-        DcMotor backLeftDrive = hardwareMap.get(DcMotor.class, "left_driveB");
-
-        Intake intake = new Intake(hardwareMap, telemetry, gamepad1);
-
-        SwingArm swingArm = new SwingArm(hardwareMap, telemetry, gamepad2, false);
-
-        Suspension suspension = new Suspension(hardwareMap, telemetry, gamepad2);
+        // The drive motors skip writes that wouldn't change anything (see CachingMotor)
+        // The totals would otherwise carry over from the last OpMode that ran
+        CachingMotor.resetTotalWritesSaved();
+        ServoController.resetTotalWritesSaved();
+        CachingMotor backRightDrive = new CachingMotor(hardwareMap.get(DcMotorEx.class, "right_driveB"), DRIVE_POWER_EPSILON);
+        CachingMotor frontRightDrive = new CachingMotor(hardwareMap.get(DcMotorEx.class, "right_driveF"), DRIVE_POWER_EPSILON);
+        CachingMotor frontLeftDrive = new CachingMotor(hardwareMap.get(DcMotorEx.class, "left_driveF"), DRIVE_POWER_EPSILON);
+        CachingMotor backLeftDrive = new CachingMotor(hardwareMap.get(DcMotorEx.class, "left_driveB"), DRIVE_POWER_EPSILON);
+
+        // The loop only stores numbers in these slots; they're formatted and sent when the Driver Station is ready.
+        ThrottledTelemetry loopTelemetry = new ThrottledTelemetry(telemetry);
+        int statusSlot = loopTelemetry.addSlot("Status", "Run Time: %.1f");
+        int frontPowerSlot = loopTelemetry.addSlot("Front left/Right", "%4.2f, %4.2f");
+        int backPowerSlot = loopTelemetry.addSlot("Back  left/Right", "%4.2f, %4.2f");
+        int headingSlot = loopTelemetry.addSlot("IMU orientation", "%.3f");
+        int doorSlot = loopTelemetry.addSlot("Door servo position", "%.2f");
+        int writesSavedSlot = loopTelemetry.addSlot("Writes Saved Motor:Servo", "%.0f:%.0f");
+        int imuSlot = loopTelemetry.addSlot("IMU Errors:Stale Cycles:Restarts", "%.0f:%.0f:%.0f");
+        long imuStaleCycles = 0;
+
+        Intake intake = new Intake(hardwareMap, loopTelemetry, gamepad1);
+
+        SwingArm swingArm = new SwingArm(hardwareMap, loopTelemetry, gamepad2, false);
+
+        Suspension suspension = new Suspension(hardwareMap, loopTelemetry, gamepad2);
 
         DoorServo doorServo = new DoorServo(hardwareMap, gamepad2);
 
@@ -118,6 +142,9 @@ public class CenterStageTeleOp extends LinearOpMode {
                         RevHubOrientationOnRobot.UsbFacingDirection.RIGHT
                 )));
 
+        // Reads the IMU on its own thread so the loop never waits on it (started just before the loop)
+        ImuSampler imuSampler = new ImuSampler(imu);
+
 
         // ########################################################################################
         // !!!            IMPORTANT Drive Information. Test your motor directions.            !!!!!
@@ -141,115 +168,180 @@ public class CenterStageTeleOp extends LinearOpMode {
         frontRightDrive.setZeroPowerBehavior(DcMotor.ZeroPowerBehavior.BRAKE);
         backRightDrive.setZeroPowerBehavior(DcMotor.ZeroPowerBehavior.BRAKE);
 
+        //sets up for bulk reads in manual mode! Read about it here: https://gm0.org/en/latest/docs/software/tutorials/bulk-reads.html
+        List<LynxModule> allHubs = hardwareMap.getAll(LynxModule.class);
+        for (LynxModule hub : allHubs) {
+            hub.setBulkCachingMode(LynxModule.BulkCachingMode.MANUAL);
+        }
+
+        // Scale the motor powers for the battery voltage, so the robot acts the same all match (see VoltageCompensation)
+        VoltageCompensation voltageCompensation = new VoltageCompensation();
+        frontLeftDrive.setVoltageCompensation(voltageCompensation);
+        backLeftDrive.setVoltageCompensation(voltageCompensation);
+        frontRightDrive.setVoltageCompensation(voltageCompensation);
+        backRightDrive.setVoltageCompensation(voltageCompensation);
+        intake.setVoltageCompensation(voltageCompensation);
+        swingArm.setVoltageCompensation(voltageCompensation);
+        suspension.setVoltageCompensation(voltageCompensation);
+
+        // Everything the loop needs from the sensors is read once per cycle (see RobotState)
+        RobotState.Reader stateReader = new RobotState.Reader(allHubs,
+                frontLeftDrive, backLeftDrive, frontRightDrive, backRightDrive,
+                imuSampler, hardwareMap.voltageSensor.iterator().next());
+
         // Wait for the game to start (driver presses PLAY)
         telemetry.addData("Status", "Initialized");
         swingArm.initLoop();
         suspension.initLoop();
         telemetry.update();
 
-        waitForStart();
-        runtime.reset();
-
-        // run until the end of the match (driver presses STOP)
-        while (opModeIsActive()) {
-            double max;
-
-            intake.loop();
-            swingArm.loop();
-            suspension.loop();
-            doorServo.loop();
-            bucketServo.loop();
-            droneLauncherServo.loop();
-
-            // POV Mode uses left joystick to go forward & strafe, and right joystick to rotate.
-
-            double y = -gamepad1.left_stick_y;  // Note: pushing stick forward gives negative value ;
-            double x = gamepad1.left_stick_x;
-            double rx = -gamepad1.right_stick_x;
-
-            // Use the IMU to determine the orientation of the robot relative to its position when
-            // initialized, and then calculate rotation
-            //imu.getRobotOrientation()
-            //double botHeading = -imu.getAngularOrientation().firstAngle;
-
-            YawPitchRollAngles orientation = imu.getRobotYawPitchRollAngles();
-            double botHeading = orientation.getYaw(AngleUnit.RADIANS);
-            double rotX = x * Math.cos(botHeading) + y * Math.sin(botHeading);
-            double rotY = -x * Math.sin(botHeading) + y * Math.cos(botHeading);
-
-            /*
-            Fixed(?) drivetrain weirdness.
-            Old code:
-            double rotX = x * Math.cos(botHeading) - y * Math.sin(botHeading);
-            double rotY = x * Math.sin(botHeading) + y * Math.cos(botHeading);
-             */
-
-            // Combine the joystick requests for each axis-motion to determine each wheel's power.
-            // Set up a variable for each drive wheel to save the power level for telemetry.
-            double leftFrontPower = rotY + rotX + rx;
-            double rightFrontPower = rotY - rotX - rx;
-            double leftBackPower = rotY - rotX + rx;
-            double rightBackPower = rotY + rotX - rx;
-
-            // Normalize the values so no wheel power exceeds 100%
-            // This ensures that the robot maintains the desired motion.
-            max = Math.max(Math.abs(leftFrontPower), Math.abs(rightFrontPower));
-            max = Math.max(max, Math.abs(leftBackPower));
-            max = Math.max(max, Math.abs(rightBackPower));
-
-            if (max > 1.0) {
-                leftFrontPower /= max;
-                rightFrontPower /= max;
-                leftBackPower /= max;
-                rightBackPower /= max;
-            }
-
-            // Hold the left bumper and the corresponding button to run test code.
-            // Each button should make the corresponding motor run FORWARD.
-            //   1) First get all the motors to take to correct positions on the robot
-            //      by adjusting your Robot Configuration if necessary.
-            //   2) Then make sure they run in the correct direction by modifying the
-            //      the setDirection() calls above.
-            if (gamepad1.left_bumper) {
-                leftFrontPower = gamepad1.x ? 1.0 : 0.0;  // X gamepad
-                leftBackPower = gamepad1.a ? 1.0 : 0.0;   // A gamepad
-                rightFrontPower = gamepad1.y ? 1.0 : 0.0; // Y gamepad
-                rightBackPower = gamepad1.b ? 1.0 : 0.0;  // B gamepad
-            }
-
-            double speedModifier;
-            if (!(gamepad1.left_stick_button || gamepad1.right_bumper)) {
-                speedModifier = 0.5;
-            } else {
-                speedModifier = 1;
-            }
-
-            if (gamepad1.back) {
-                gamepad1.rumble(100);
-                SoundPlayer.getInstance().startPlaying(hardwareMap.appContext, new File("C:\\Users\\TekersRobotics\\StudioProjects\\FtcRobotController-2023CenterStage\\TeamCode\\src\\main\\java\\org\\firstinspires\\ftc\\teamcode\\Alert.mp3"));
-                imu.resetYaw();
-            }
+        // Records every cycle to a file on the Control Hub, so we can see what happened in a match
+        CycleLogger cycleLogger = null;
+        try {
+            cycleLogger = new CycleLogger(new File(AppUtil.ROBOT_DATA_DIR, "CenterStageTeleOp.cyclelog"));
+        } catch (IOException e) {
+            telemetry.addData("Cycle log", "Could not open: " + e.getMessage());
+            telemetry.update();
+        }
 
-            if(orientation.getYaw(AngleUnit.RADIANS) == 0.0) {
-                gamepad1.rumble(250);
+        // Stop the sampler thread and flush the log even if something in the loop throws
+        imuSampler.start();
+        try {
+            waitForStart();
+            runtime.reset();
+            loopTimer.startCycle();
+
+            // Filled in by MecanumKinematics every loop
+            double[] rotated = new double[2];
+            double[] wheelPowers = new double[4];
+
+            // run until the end of the match (driver presses STOP)
+            while (opModeIsActive()) {
+
+                RobotState state = stateReader.read();
+                if (state.imuStale) imuStaleCycles++;
+                voltageCompensation.update(state.batteryVoltage, state.timestampNanos);
+                loopTimer.mark(LoopTimer.SENSE);
+
+                intake.loop();
+                swingArm.loop(state);
+                suspension.loop(state);
+                doorServo.loop(state);
+                bucketServo.loop(state);
+                droneLauncherServo.loop();
+                loopTimer.mark(LoopTimer.ACTUATE);
+
+                // POV Mode uses left joystick to go forward & strafe, and right joystick to rotate.
+
+                double y = -gamepad1.left_stick_y;  // Note: pushing stick forward gives negative value ;
+                double x = gamepad1.left_stick_x;
+                double rx = -gamepad1.right_stick_x;
+
+                // Use the IMU to determine the orientation of the robot relative to its position when
+                // initialized, and then calculate rotation
+                //imu.getRobotOrientation()
+                //double botHeading = -imu.getAngularOrientation().firstAngle;
+
+                double botHeading = Math.toRadians(state.yaw);
+                MecanumKinematics.fieldCentric(x, y, botHeading, rotated);
+                double rotX = rotated[0];
+                double rotY = rotated[1];
+
+                /*
+                Fixed(?) drivetrain weirdness.
+                Old code:
+                double rotX = x * Math.cos(botHeading) - y * Math.sin(botHeading);
+                double rotY = x * Math.sin(botHeading) + y * Math.cos(botHeading);
+                 */
+
+                // Combine the joystick requests for each axis-motion to determine each wheel's power,
+                // normalized so no wheel power exceeds 100%.
+                // Set up a variable for each drive wheel to save the power level for telemetry.
+                MecanumKinematics.wheelPowers(rotY, rotX, rx, wheelPowers);
+                double leftFrontPower = wheelPowers[MecanumKinematics.LEFT_FRONT];
+                double rightFrontPower = wheelPowers[MecanumKinematics.RIGHT_FRONT];
+                double leftBackPower = wheelPowers[MecanumKinematics.LEFT_BACK];
+                double rightBackPower = wheelPowers[MecanumKinematics.RIGHT_BACK];
+
+                // Hold the left bumper and the corresponding button to run test code.
+                // Each button should make the corresponding motor run FORWARD.
+                //   1) First get all the motors to take to correct positions on the robot
+                //      by adjusting your Robot Configuration if necessary.
+                //   2) Then make sure they run in the correct direction by modifying the
+                //      the setDirection() calls above.
+                if (gamepad1.left_bumper) {
+                    leftFrontPower = gamepad1.x ? 1.0 : 0.0;  // X gamepad
+                    leftBackPower = gamepad1.a ? 1.0 : 0.0;   // A gamepad
+                    rightFrontPower = gamepad1.y ? 1.0 : 0.0; // Y gamepad
+                    rightBackPower = gamepad1.b ? 1.0 : 0.0;  // B gamepad
+                }
+
+                double speedModifier;
+                if (!(gamepad1.left_stick_button || gamepad1.right_bumper)) {
+                    speedModifier = 0.5;
+                } else {
+                    speedModifier = 1;
+                }
+
+                if (gamepad1.back) {
+                    gamepad1.rumble(100);
+                    SoundPlayer.getInstance().startPlaying(hardwareMap.appContext, new File("C:\\Users\\TekersRobotics\\StudioProjects\\FtcRobotController-2023CenterStage\\TeamCode\\src\\main\\java\\org\\firstinspires\\ftc\\teamcode\\Alert.mp3"));
+                    // Done by the sampler thread between reads, so it's the only one using the IMU
+                    imuSampler.requestYawReset();
+                }
+
+                if(state.yaw == 0.0) {
+                    gamepad1.rumble(250);
+                }
+
+                loopTimer.mark(LoopTimer.COMPUTE);
+
+                // Send calculated power to wheels
+                frontLeftDrive.setPower(leftFrontPower * speedModifier);
+                frontRightDrive.setPower(rightFrontPower * speedModifier);
+                backLeftDrive.setPower(leftBackPower * speedModifier);
+                backRightDrive.setPower(rightBackPower * speedModifier);
+                loopTimer.mark(LoopTimer.ACTUATE);
+
+                if (cycleLogger != null) {
+                    cycleLogger.set(CycleLog.LEFT_FRONT_POS, state.leftFrontPosition);
+                    cycleLogger.set(CycleLog.LEFT_BACK_POS, state.leftBackPosition);
+                    cycleLogger.set(CycleLog.RIGHT_FRONT_POS, state.rightFrontPosition);
+                    cycleLogger.set(CycleLog.RIGHT_BACK_POS, state.rightBackPosition);
+                    cycleLogger.set(CycleLog.YAW, state.yaw);
+                    cycleLogger.set(CycleLog.YAW_RATE, state.yawRate);
+                    cycleLogger.set(CycleLog.TARGET_HEADING, Double.NaN);
+                    cycleLogger.set(CycleLog.DRIVE_SPEED, y);
+                    cycleLogger.set(CycleLog.TURN_SPEED, rx);
+                    cycleLogger.set(CycleLog.LEFT_FRONT_POWER, leftFrontPower * speedModifier);
+                    cycleLogger.set(CycleLog.LEFT_BACK_POWER, leftBackPower * speedModifier);
+                    cycleLogger.set(CycleLog.RIGHT_FRONT_POWER, rightFrontPower * speedModifier);
+                    cycleLogger.set(CycleLog.RIGHT_BACK_POWER, rightBackPower * speedModifier);
+                    cycleLogger.set(CycleLog.ARM_TARGET, swingArm.getTargetPosition());
+                    cycleLogger.set(CycleLog.BATTERY_VOLTAGE, state.batteryVoltage);
+                    cycleLogger.commit(state.timestampNanos);
+                }
+
+                // Show the elapsed game time and wheel power.
+                loopTelemetry.set(statusSlot, runtime.seconds());
+                loopTelemetry.set(frontPowerSlot, leftFrontPower, rightFrontPower);
+                loopTelemetry.set(backPowerSlot, leftBackPower, rightBackPower);
+                loopTelemetry.set(headingSlot, botHeading);
+                loopTelemetry.set(doorSlot, doorServo.doorServo.getServoPosition());
+                loopTelemetry.set(writesSavedSlot, CachingMotor.getTotalWritesSaved(), ServoController.getTotalWritesSaved());
+                loopTelemetry.set(imuSlot, imuSampler.getErrorCount(), imuStaleCycles, imuSampler.getRestartCount());
+                if (loopTelemetry.isDue()) {
+                    // Only worth adding these when they'll actually be sent
+                    telemetry.addLine("LB + A/B/X/Y to test single motors");
+                    loopTimer.addTelemetry(telemetry);
+                }
+                loopTelemetry.update();
+                loopTimer.mark(LoopTimer.TELEMETRY);
+                loopTimer.endCycle();
             }
-
-            // Send calculated power to wheels
-            frontLeftDrive.setPower(leftFrontPower * speedModifier);
-            frontRightDrive.setPower(rightFrontPower * speedModifier);
-            backLeftDrive.setPower(leftBackPower * speedModifier);
-            backRightDrive.setPower(rightBackPower * speedModifier);
-
-            // Show the elapsed game time and wheel power.
-            telemetry.addData("Status", "Run Time: " + runtime);
-            telemetry.addData("Front left/Right", "%4.2f, %4.2f", leftFrontPower, rightFrontPower);
-            telemetry.addData("Back  left/Right", "%4.2f, %4.2f", leftBackPower, rightBackPower);
-            telemetry.addLine("LB + A/B/X/Y to test single motors");
-            telemetry.addLine("");
-            telemetry.addData("IMU orientation", botHeading);
-            telemetry.addLine("");
-            telemetry.addData("Door servo position", doorServo.doorServo.getServoPosition());
-            telemetry.update();
+        } finally {
+            imuSampler.stop();
+            if (cycleLogger != null) cycleLogger.close();
         }
     }
 }
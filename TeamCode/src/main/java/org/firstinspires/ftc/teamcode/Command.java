@@ -0,0 +1,252 @@
+package org.firstinspires.ftc.teamcode;
+
+/**
+ * Something the robot does over several loop cycles without blocking the loop, like raising the
+ * arm or opening the door and waiting for the pixel to drop. Commands are run by a CommandScheduler,
+ * which calls them once per cycle, so the robot keeps driving (and logging, and sending telemetry)
+ * while they happen.
+ *
+ * A command's life: initialize() once, then execute() every cycle until isFinished() says true,
+ * then end(false). If it's cancelled (or loses a race) it gets end(true) instead.
+ *
+ * Commands are combined with the groups below:
+ *
+ *   Command deliver = new Command.Sequential(
+ *           raiseArm(),
+ *           new Command.Instant(openDoor),
+ *           new Command.Wait(0.5));
+ *
+ * Sequential runs them one after another, Parallel runs them together until they've all finished,
+ * Race runs them together until any one finishes, and Deadline runs them together until the first
+ * one finishes. Times are RobotState.timestampNanos values, which come from the loop's NanoClock,
+ * so in a simulation (see CenterStageAutonomous.simulate()) commands run in simulated time too.
+ * Pure Java, so it can run on a laptop.
+ */
+public abstract class Command {
+
+    public void initialize(long nowNanos) {
+    }
+
+    public void execute(long nowNanos) {
+    }
+
+    public boolean isFinished(long nowNanos) {
+        return false;
+    }
+
+    public void end(boolean interrupted) {
+    }
+
+    /**
+     * @return This command, but cancelled if it takes longer than seconds.
+     */
+    public Command withTimeout(double seconds) {
+        return new Race(this, new Wait(seconds));
+    }
+
+    public interface Condition {
+        boolean isTrue();
+    }
+
+    /**
+     * Runs a Runnable once and finishes straight away.
+     */
+    public static class Instant extends Command {
+        private final Runnable action;
+
+        public Instant(Runnable action) {
+            this.action = action;
+        }
+
+        @Override
+        public void initialize(long nowNanos) {
+            action.run();
+        }
+
+        @Override
+        public boolean isFinished(long nowNanos) {
+            return true;
+        }
+    }
+
+    /**
+     * Does nothing for a while. Only use it for things the robot can't sense, like a servo moving.
+     */
+    public static class Wait extends Command {
+        private final long durationNanos;
+        private long startNanos;
+
+        public Wait(double seconds) {
+            durationNanos = (long) (seconds * 1e9);
+        }
+
+        @Override
+        public void initialize(long nowNanos) {
+            startNanos = nowNanos;
+        }
+
+        @Override
+        public boolean isFinished(long nowNanos) {
+            return nowNanos - startNanos >= durationNanos;
+        }
+    }
+
+    /**
+     * Finishes once the condition is true.
+     */
+    public static class WaitUntil extends Command {
+        private final Condition condition;
+
+        public WaitUntil(Condition condition) {
+            this.condition = condition;
+        }
+
+        @Override
+        public boolean isFinished(long nowNanos) {
+            return condition.isTrue();
+        }
+    }
+
+    /**
+     * Runs the commands one after another. Each one starts on the same cycle the one before it finishes.
+     */
+    public static class Sequential extends Command {
+        private final Command[] commands;
+        private int current;
+
+        public Sequential(Command... commands) {
+            this.commands = commands;
+        }
+
+        @Override
+        public void initialize(long nowNanos) {
+            current = 0;
+            if (commands.length > 0) commands[0].initialize(nowNanos);
+        }
+
+        @Override
+        public void execute(long nowNanos) {
+            // Keep going through commands that finish straight away (like Instant), so a chain of
+            // them doesn't take a cycle each
+            while (current < commands.length) {
+                Command command = commands[current];
+                command.execute(nowNanos);
+                if (!command.isFinished(nowNanos)) return;
+                command.end(false);
+                current++;
+                if (current < commands.length) commands[current].initialize(nowNanos);
+            }
+        }
+
+        @Override
+        public boolean isFinished(long nowNanos) {
+            return current >= commands.length;
+        }
+
+        @Override
+        public void end(boolean interrupted) {
+            if (interrupted && current < commands.length) {
+                commands[current].end(true);
+            }
+        }
+    }
+
+    /**
+     * Base for the groups that run all their commands at the same time.
+     */
+    abstract static class Together extends Command {
+        protected final Command[] commands;
+        protected final boolean[] running;
+
+        Together(Command... commands) {
+            this.commands = commands;
+            running = new boolean[commands.length];
+        }
+
+        @Override
+        public void initialize(long nowNanos) {
+            for (int i = 0; i < commands.length; i++) {
+                commands[i].initialize(nowNanos);
+                running[i] = true;
+            }
+        }
+
+        @Override
+        public void execute(long nowNanos) {
+            for (int i = 0; i < commands.length; i++) {
+                if (!running[i]) continue;
+                commands[i].execute(nowNanos);
+                if (commands[i].isFinished(nowNanos)) {
+                    commands[i].end(false);
+                    running[i] = false;
+                }
+            }
+        }
+
+        @Override
+        public void end(boolean interrupted) {
+            // Whatever is still running didn't get to finish
+            for (int i = 0; i < commands.length; i++) {
+                if (running[i]) {
+                    commands[i].end(true);
+                    running[i] = false;
+                }
+            }
+        }
+    }
+
+    /**
+     * Runs the commands at the same time, and finishes when they all have.
+     */
+    public static class Parallel extends Together {
+        public Parallel(Command... commands) {
+            super(commands);
+        }
+
+        @Override
+        public boolean isFinished(long nowNanos) {
+            for (boolean r : running) {
+                if (r) return false;
+            }
+            return true;
+        }
+    }
+
+    /**
+     * Runs the commands at the same time, and finishes as soon as any one of them does.
+     */
+    public static class Race extends Together {
+        public Race(Command... commands) {
+            super(commands);
+        }
+
+        @Override
+        public boolean isFinished(long nowNanos) {
+            for (boolean r : running) {
+                if (!r) return true;
+            }
+            return false;
+        }
+    }
+
+    /**
+     * Runs the commands at the same time, and finishes when the deadline does.
+     */
+    public static class Deadline extends Together {
+        public Deadline(Command deadline, Command... others) {
+            super(prepend(deadline, others));
+        }
+
+        private static Command[] prepend(Command first, Command[] rest) {
+            Command[] all = new Command[rest.length + 1];
+            all[0] = first;
+            System.arraycopy(rest, 0, all, 1, rest.length);
+            return all;
+        }
+
+        @Override
+        public boolean isFinished(long nowNanos) {
+            return !running[0];
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package org.firstinspires.ftc.teamcode;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Runs Commands. Call run() once per loop cycle (CenterStageAutonomous does it in periodic()),
+ * and every scheduled command gets its turn. Nothing here ever waits, so one slow mechanism
+ * can't hold up the drive loop.
+ *
+ * A command scheduled during a cycle starts on the next run(), and is initialized and executed
+ * in that same run(). Pure Java, so it can run on a laptop.
+ */
+public class CommandScheduler {
+
+    private final List<Command> scheduled = new ArrayList<>();
+    private final List<Command> running = new ArrayList<>();
+
+    /**
+     * Start the command on the next run(). Does nothing if it's already scheduled.
+     */
+    public void schedule(Command command) {
+        if (!isScheduled(command)) {
+            scheduled.add(command);
+        }
+    }
+
+    /**
+     * @param nowNanos This cycle's time, usually RobotState.timestampNanos.
+     */
+    public void run(long nowNanos) {
+        // Plain index loops so nothing is allocated every cycle
+        for (int i = 0; i < scheduled.size(); i++) {
+            Command command = scheduled.get(i);
+            command.initialize(nowNanos);
+            running.add(command);
+        }
+        scheduled.clear();
+
+        for (int i = 0; i < running.size(); i++) {
+            Command command = running.get(i);
+            command.execute(nowNanos);
+            if (command.isFinished(nowNanos)) {
+                command.end(false);
+                running.remove(i);
+                i--;
+            }
+        }
+    }
+
+    public boolean isScheduled(Command command) {
+        return scheduled.contains(command) || running.contains(command);
+    }
+
+    /**
+     * @return True if no commands are waiting or running.
+     */
+    public boolean isIdle() {
+        return scheduled.isEmpty() && running.isEmpty();
+    }
+
+    /**
+     * Stops the command (it gets end(true)) if it's running, or drops it if it hasn't started yet.
+     */
+    public void cancel(Command command) {
+        scheduled.remove(command);
+        if (running.remove(command)) {
+            command.end(true);
+        }
+    }
+
+    public void cancelAll() {
+        scheduled.clear();
+        for (int i = 0; i < running.size(); i++) {
+            running.get(i).end(true);
+        }
+        running.clear();
+    }
+}
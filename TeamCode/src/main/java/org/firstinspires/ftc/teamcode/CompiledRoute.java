@@ -0,0 +1,50 @@
+package org.firstinspires.ftc.teamcode;
+
+/**
+ * A Path with all the planning already done: headings mirrored for the alliance, distances
+ * turned into encoder counts, drives joined up and their motion profiles worked out.
+ * CenterStageAutonomous builds one of these for every init menu choice while it waits in init,
+ * so after Start it only has to pick one and drive it.
+ *
+ * Everything is stored in flat arrays indexed by segment, the same order as the Path.
+ */
+public class CompiledRoute {
+
+    public final int size;
+
+    public final int[] type;             // Path.DRIVE, TURN, PAUSE, DELIVER, MOVE or WAIT
+    public final double[] speed;         // maxDriveSpeed or maxTurnSpeed
+    public final double[] distance;      // inches, for the non-profiled fallback
+    public final int[] counts;           // encoder counts to drive
+    public final double[] heading;       // degrees, already mirrored
+    public final long[] pauseMs;
+    public final double[] moveX;         // MOVE: inches along the field, already mirrored
+    public final double[] moveY;
+
+    // Drives: the last drive in the same profile as this one (itself if it isn't joined to the next),
+    // and whether to wait for the wheels to reach the final position at the end of it.
+    // Turns: whether to wait for the turn controller to settle, instead of moving on at tolerance.
+    public final int[] lastJoined;
+    public final boolean[] settle;
+    // Drives: the profile for a group of joined drives, stored at the first drive of the group.
+    // Moves: the profile for the move, in inches.
+    public final MotionProfile[] profiles;
+    // Turns that don't settle: how close the heading has to get before moving on
+    public final double[] tolerance;
+
+    public CompiledRoute(int size) {
+        this.size = size;
+        type = new int[size];
+        speed = new double[size];
+        distance = new double[size];
+        counts = new int[size];
+        heading = new double[size];
+        pauseMs = new long[size];
+        moveX = new double[size];
+        moveY = new double[size];
+        lastJoined = new int[size];
+        settle = new boolean[size];
+        profiles = new MotionProfile[size];
+        tolerance = new double[size];
+    }
+}
@@ -0,0 +1,190 @@
+package org.firstinspires.ftc.teamcode;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * The layout of the binary cycle log written by CycleLogger.
+ *
+ * The file is a fixed-size ring of records, stored column by column: a header, then every
+ * timestamp, then every left front encoder count, and so on. Record i of a column lives at
+ *   columnOffset(column) + (i % capacity) * WIDTH[column]
+ * Once the file is full the oldest records get overwritten.
+ *
+ * Header (HEADER_BYTES long, big-endian like everything else in the file):
+ *   int  MAGIC
+ *   int  VERSION
+ *   int  capacity (records)
+ *   int  column count
+ *   long number of records written so far (can be more than capacity)
+ */
+public class CycleLog {
+
+    public static final int MAGIC = 0x31313039;    // "1109"
+    public static final int VERSION = 5;
+    public static final int HEADER_BYTES = 64;
+    public static final int HEADER_RECORDS_WRITTEN = 16;
+
+    // Column types
+    public static final int LONG = 0;
+    public static final int INT = 1;
+    public static final int FLOAT = 2;
+    public static final int DOUBLE = 3;
+    public static final int BYTE = 4;
+
+    // Columns. TIMESTAMP is always first and is stored separately as a long.
+    public static final int TIMESTAMP = 0;          // System.nanoTime() when the state was read
+    public static final int LEFT_FRONT_POS = 1;     // drive encoder counts
+    public static final int LEFT_BACK_POS = 2;
+    public static final int RIGHT_FRONT_POS = 3;
+    public static final int RIGHT_BACK_POS = 4;
+    public static final int YAW = 5;                // raw IMU yaw, degrees
+    public static final int YAW_RATE = 6;           // degrees per second
+    public static final int HEADING_OFFSET = 7;     // subtracted from YAW to get the robot heading
+    public static final int TARGET_HEADING = 8;     // degrees, NaN when not steering to a heading
+    public static final int DRIVE_SPEED = 9;        // commanded forward speed
+    public static final int TURN_SPEED = 10;        // commanded turn speed
+    public static final int LEFT_FRONT_POWER = 11;  // power actually sent to each wheel
+    public static final int LEFT_BACK_POWER = 12;
+    public static final int RIGHT_FRONT_POWER = 13;
+    public static final int RIGHT_BACK_POWER = 14;
+    public static final int ARM_TARGET = 15;        // swing arm target, encoder counts
+    public static final int SELECTION = 16;         // FirstVisionProcessor.Selected ordinal
+    public static final int BATTERY_VOLTAGE = 17;
+    public static final int STEERING_GAIN = 18;     // kP of the controller getSteeringCorrection() used
+    public static final int STEERING_CORRECTION = 19;   // what getSteeringCorrection() returned
+    public static final int POSE_X = 20;            // Localizer pose, inches
+    public static final int POSE_Y = 21;
+    public static final int STEERING_INTEGRAL = 22; // the steering controller's integral, degree-seconds
+    public static final int STEERING_CONTROLLER = 23;   // CONTROLLER_*: which controller getSteeringCorrection() updated this cycle
+
+    public static final int COLUMN_COUNT = 24;
+
+    // Values of STEERING_CONTROLLER
+    public static final int CONTROLLER_NONE = 0;
+    public static final int CONTROLLER_TURN = 1;        // DriveControl.turnController()
+    public static final int CONTROLLER_DRIVE = 2;       // DriveControl.driveController()
+
+    public static final String[] NAMES = {
+            "timestamp",
+            "leftFrontPos", "leftBackPos", "rightFrontPos", "rightBackPos",
+            "yaw", "yawRate", "headingOffset", "targetHeading",
+            "driveSpeed", "turnSpeed",
+            "leftFrontPower", "leftBackPower", "rightFrontPower", "rightBackPower",
+            "armTarget", "selection", "batteryVoltage",
+            "steeringGain", "steeringCorrection",
+            "poseX", "poseY",
+            "steeringIntegral", "steeringController"
+    };
+
+    public static final int[] TYPES = {
+            LONG,
+            INT, INT, INT, INT,
+            DOUBLE, FLOAT, DOUBLE, DOUBLE,
+            FLOAT, FLOAT,
+            FLOAT, FLOAT, FLOAT, FLOAT,
+            INT, BYTE, FLOAT,
+            DOUBLE, DOUBLE,
+            FLOAT, FLOAT,
+            DOUBLE, BYTE
+    };
+
+    private static final int[] TYPE_WIDTHS = {8, 4, 4, 8, 1};
+
+    public static int width(int column) {
+        return TYPE_WIDTHS[TYPES[column]];
+    }
+
+    /**
+     * @return Bytes used by one record, across all the columns.
+     */
+    public static int recordWidth() {
+        int width = 0;
+        for (int column = 0; column < COLUMN_COUNT; column++) {
+            width += width(column);
+        }
+        return width;
+    }
+
+    /**
+     * @return Where the given column starts in a file that holds capacity records.
+     */
+    public static long columnOffset(int column, int capacity) {
+        long offset = HEADER_BYTES;
+        for (int c = 0; c < column; c++) {
+            offset += (long) width(c) * capacity;
+        }
+        return offset;
+    }
+
+    public static long fileSize(int capacity) {
+        return HEADER_BYTES + (long) recordWidth() * capacity;
+    }
+
+    /**
+     * Reads a cycle log file, oldest record first. Uses only plain Java, so it works on a laptop.
+     */
+    public static class Reader {
+        private final ByteBuffer buffer;
+        private final int capacity;
+        private final long recordsWritten;
+        private final long[] columnOffsets = new long[COLUMN_COUNT];
+
+        public Reader(File path) throws IOException {
+            try (RandomAccessFile file = new RandomAccessFile(path, "r")) {
+                buffer = file.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, file.length());
+            }
+            if (buffer.getInt(0) != MAGIC) {
+                throw new IOException(path + " is not a cycle log");
+            }
+            if (buffer.getInt(4) != VERSION || buffer.getInt(12) != COLUMN_COUNT) {
+                throw new IOException(path + " was written by a different version of CycleLogger");
+            }
+            capacity = buffer.getInt(8);
+            recordsWritten = buffer.getLong(HEADER_RECORDS_WRITTEN);
+            for (int column = 0; column < COLUMN_COUNT; column++) {
+                columnOffsets[column] = columnOffset(column, capacity);
+            }
+        }
+
+        /**
+         * @return How many records are in the file. Only the last capacity records are kept.
+         */
+        public int getRecordCount() {
+            return (int) Math.min(recordsWritten, capacity);
+        }
+
+        private int position(int column, int record) {
+            // Once the ring has wrapped, the oldest record is the one after the newest.
+            long first = recordsWritten - getRecordCount();
+            int index = (int) ((first + record) % capacity);
+            return (int) (columnOffsets[column] + (long) index * width(column));
+        }
+
+        public long getTimestamp(int record) {
+            return buffer.getLong(position(TIMESTAMP, record));
+        }
+
+        /**
+         * @return The value of any column other than TIMESTAMP, as a double.
+         */
+        public double get(int column, int record) {
+            int position = position(column, record);
+            switch (TYPES[column]) {
+                case INT:
+                    return buffer.getInt(position);
+                case FLOAT:
+                    return buffer.getFloat(position);
+                case DOUBLE:
+                    return buffer.getDouble(position);
+                case BYTE:
+                    return buffer.get(position);
+                default:
+                    return buffer.getLong(position);
+            }
+        }
+    }
+}
@@ -0,0 +1,187 @@
+package org.firstinspires.ftc.teamcode;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Records what the robot did every cycle into a binary file on the Control Hub, so we can look
+ * at (or replay) a match afterwards. The layout of the file is described in CycleLog.
+ *
+ * The control loop never touches the file. It fills in the columns for the current cycle with
+ * set(), then commit() copies them into an in-memory ring buffer. A background thread empties
+ * the ring into a memory-mapped file. If the ring is ever full, the record is dropped (and
+ * counted) rather than making the control loop wait.
+ *
+ *   cycleLogger.set(CycleLog.YAW, state.yaw);
+ *   ...
+ *   cycleLogger.commit(state.timestampNanos);
+ */
+public class CycleLogger implements Runnable {
+
+    // How many records fit in the file. At 50 cycles a second that's over 20 minutes.
+    public static final int DEFAULT_CAPACITY = 65536;
+    // How many records can be waiting for the writer thread. Must be a power of 2.
+    private static final int RING_SIZE = 1024;
+    private static final int RING_MASK = RING_SIZE - 1;
+
+    private final int capacity;
+    private final RandomAccessFile file;
+    private final MappedByteBuffer buffer;
+    private final long[] columnOffsets = new long[CycleLog.COLUMN_COUNT];
+
+    // The record being filled in by the control loop
+    private final double[] current = new double[CycleLog.COLUMN_COUNT];
+
+    // Ring buffer. Only the control loop writes head, only the writer thread writes tail.
+    private final long[] ringTimestamps = new long[RING_SIZE];
+    private final double[] ringValues = new double[RING_SIZE * CycleLog.COLUMN_COUNT];
+    private final AtomicLong head = new AtomicLong(0);
+    private final AtomicLong tail = new AtomicLong(0);
+
+    private volatile long dropped = 0;
+    private volatile boolean running = true;
+    private final Thread writerThread;
+
+    public CycleLogger(File path) throws IOException {
+        this(path, DEFAULT_CAPACITY);
+    }
+
+    public CycleLogger(File path, int capacity) throws IOException {
+        this.capacity = capacity;
+        File parent = path.getParentFile();
+        if (parent != null) parent.mkdirs();
+
+        file = new RandomAccessFile(path, "rw");
+        long size = CycleLog.fileSize(capacity);
+        file.setLength(size);
+        buffer = file.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+
+        for (int column = 0; column < CycleLog.COLUMN_COUNT; column++) {
+            columnOffsets[column] = CycleLog.columnOffset(column, capacity);
+        }
+
+        buffer.putInt(0, CycleLog.MAGIC);
+        buffer.putInt(4, CycleLog.VERSION);
+        buffer.putInt(8, capacity);
+        buffer.putInt(12, CycleLog.COLUMN_COUNT);
+        buffer.putLong(CycleLog.HEADER_RECORDS_WRITTEN, 0);
+
+        writerThread = new Thread(this, "CycleLogger");
+        writerThread.setDaemon(true);
+        writerThread.start();
+    }
+
+    /**
+     * Set one column of the current record. Columns that aren't set keep their value from the last record.
+     */
+    public void set(int column, double value) {
+        current[column] = value;
+    }
+
+    /**
+     * Hands the current record to the writer thread. Never blocks.
+     *
+     * @return False if the ring was full and the record was dropped.
+     */
+    public boolean commit(long timestampNanos) {
+        long h = head.get();
+        if (h - tail.get() >= RING_SIZE) {
+            dropped++;
+            return false;
+        }
+        int slot = (int) (h & RING_MASK);
+        ringTimestamps[slot] = timestampNanos;
+        System.arraycopy(current, 0, ringValues, slot * CycleLog.COLUMN_COUNT, CycleLog.COLUMN_COUNT);
+        // lazySet publishes the record after the writes above, without a full memory barrier
+        head.lazySet(h + 1);
+        return true;
+    }
+
+    public long getDropped() {
+        return dropped;
+    }
+
+    public long getWritten() {
+        return tail.get();
+    }
+
+    @Override
+    public void run() {
+        while (running) {
+            if (!drain()) {
+                try {
+                    Thread.sleep(5);
+                } catch (InterruptedException e) {
+                    break;
+                }
+            }
+        }
+        drain();
+    }
+
+    /**
+     * Writes everything in the ring to the file.
+     *
+     * @return True if anything was written.
+     */
+    private boolean drain() {
+        long t = tail.get();
+        long h = head.get();
+        if (t == h) return false;
+
+        for (; t < h; t++) {
+            int slot = (int) (t & RING_MASK);
+            int index = (int) (t % capacity);
+            int base = slot * CycleLog.COLUMN_COUNT;
+
+            buffer.putLong((int) (columnOffsets[CycleLog.TIMESTAMP] + index * 8L), ringTimestamps[slot]);
+            for (int column = 1; column < CycleLog.COLUMN_COUNT; column++) {
+                int position = (int) (columnOffsets[column] + (long) index * CycleLog.width(column));
+                double value = ringValues[base + column];
+                switch (CycleLog.TYPES[column]) {
+                    case CycleLog.INT:
+                        buffer.putInt(position, (int) value);
+                        break;
+                    case CycleLog.FLOAT:
+                        buffer.putFloat(position, (float) value);
+                        break;
+                    case CycleLog.DOUBLE:
+                        buffer.putDouble(position, value);
+                        break;
+                    case CycleLog.BYTE:
+                        buffer.put(position, (byte) value);
+                        break;
+                    default:
+                        buffer.putLong(position, (long) value);
+                        break;
+                }
+            }
+            tail.lazySet(t + 1);
+        }
+        buffer.putLong(CycleLog.HEADER_RECORDS_WRITTEN, h);
+        return true;
+    }
+
+    /**
+     * Writes out anything still in the ring and closes the file. Call this when the OpMode ends.
+     */
+    public void close() {
+        running = false;
+        writerThread.interrupt();
+        try {
+            writerThread.join(500);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        buffer.force();
+        try {
+            file.close();
+        } catch (IOException e) {
+            // Nothing useful we can do about it at this point
+        }
+    }
+}
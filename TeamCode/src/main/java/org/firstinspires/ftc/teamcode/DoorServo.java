@@ -13,10 +13,10 @@ public class DoorServo {
         doorServo.init(hardwareMap, "doorServo");
     }
 
-    public void loop() {
-        if (SwingArm.armMotor.getCurrentPosition() < 425) {
+    public void loop(RobotState state) {
+        if (state.armPosition < 425) {
             SetState(2);
-        } else if (SwingArm.armMotor.getCurrentPosition() < 800) {
+        } else if (state.armPosition < 800) {
             SetState(0);
         } else {
             if (gamepad.right_trigger > 0) {
@@ -0,0 +1,89 @@
+package org.firstinspires.ftc.teamcode;
+
+/**
+ * The math behind CenterStageAutonomous' steering and wheel powers, kept free of any robot
+ * hardware (and of the FTC SDK) so the exact same code can run on a laptop in SteeringReplay.
+ * If you change how the robot steers, change it here.
+ */
+public class DriveControl {
+
+    // Heading control gains. The turn controller is used when pivoting (larger errors), and the
+    // drive controller to hold a heading while driving straight (small errors).
+    // Increase kP if the heading does not correct strongly enough (eg: a heavy robot or using tracks).
+    // Decrease it (or increase kD) if the heading does not settle on the correct value.
+    static final double TURN_KP = 0.02;
+    static final double TURN_KI = 0.002;        // clears up the last few degrees P alone won't push through
+    static final double TURN_KD = 0.001;        // power per degree per second of yaw rate; brakes before the target
+    static final double TURN_KF = 0.05;         // just enough power to get the wheels turning
+    static final double TURN_INTEGRAL_LIMIT = 0.1;
+    static final double TURN_INTEGRAL_ZONE = 10.0;      // degrees
+    // kP is 1.5x near the target, where plain P control crawls, and normal for big turns
+    static final double[] TURN_SCHEDULE_ERRORS = {0, 5, 30};
+    static final double[] TURN_SCHEDULE_SCALES = {1.5, 1.2, 1.0};
+    static final double TURN_SETTLE_DEGREES = 1.5;
+    static final double TURN_SETTLE_RATE = 10.0;        // degrees per second
+    static final int TURN_SETTLE_CYCLES = 5;
+
+    static final double DRIVE_KP = 0.03;
+    static final double DRIVE_KD = 0.0005;
+
+    // If there's a gap this long between steering cycles, start the controller over
+    static final double MAX_STEERING_GAP_SECONDS = 0.25;
+
+    public static PidfController turnController() {
+        return new PidfController(TURN_KP, TURN_KI, TURN_KD, TURN_KF)
+                .setIntegralLimits(TURN_INTEGRAL_LIMIT, TURN_INTEGRAL_ZONE)
+                .setGainSchedule(TURN_SCHEDULE_ERRORS, TURN_SCHEDULE_SCALES)
+                .setSettleTolerance(TURN_SETTLE_DEGREES, TURN_SETTLE_RATE, TURN_SETTLE_CYCLES);
+    }
+
+    public static PidfController driveController() {
+        return new PidfController(DRIVE_KP, 0, DRIVE_KD, 0);
+    }
+
+    /**
+     * Normalize an angle to be within +/- 180 degrees.
+     */
+    public static double normalizeDegrees(double degrees) {
+        while (degrees > 180) degrees -= 360;
+        while (degrees <= -180) degrees += 360;
+        return degrees;
+    }
+
+    /**
+     * @return The heading error (target - current), normalized to +/- 180 degrees.
+     */
+    public static double headingError(double targetHeading, double robotHeading) {
+        return normalizeDegrees(targetHeading - robotHeading);
+    }
+
+    /**
+     * Proportional steering: error * gain, limited to +/- 1.0.
+     */
+    public static double steeringCorrection(double headingError, double proportionalGain) {
+        return clip(headingError * proportionalGain, -1, 1);
+    }
+
+    /**
+     * Combines drive (fwd/rev) and turn (CCW +ve) requests into left and right wheel powers,
+     * scaled down so neither is over +/- 1.0.
+     *
+     * @param out Gets {left, right}. Passed in so nothing is allocated every cycle.
+     */
+    public static void tankPowers(double drive, double turn, double[] out) {
+        double left = drive - turn;
+        double right = drive + turn;
+
+        double max = Math.max(Math.abs(left), Math.abs(right));
+        if (max > 1.0) {
+            left /= max;
+            right /= max;
+        }
+        out[0] = left;
+        out[1] = right;
+    }
+
+    public static double clip(double value, double min, double max) {
+        return Math.max(min, Math.min(max, value));
+    }
+}
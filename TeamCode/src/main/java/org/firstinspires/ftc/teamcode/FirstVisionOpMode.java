@@ -6,6 +6,7 @@ import static org.firstinspires.ftc.robotcore.external.BlocksOpModeCompanion.tel
 
 import com.qualcomm.robotcore.eventloop.opmode.Autonomous;
 import com.qualcomm.robotcore.eventloop.opmode.OpMode;
+import com.qualcomm.robotcore.util.RobotLog;
 
 import org.firstinspires.ftc.robotcore.external.hardware.camera.WebcamName;
 //import org.firstinspires.ftc.teamcode.processors.FirstVisionProcessor;
@@ -34,13 +35,21 @@ public class FirstVisionOpMode extends OpMode {
         visionPortal.stopStreaming();
     }
 
+    @Override
+    public void stop() {
+        // Free the processor's Mats once the camera is closed, and log any that leaked
+        visionPortal.close();
+        RobotLog.ii("FirstVisionOpMode", visionProcessor.release());
+    }
+
     @Override
     public void loop() {
         telemetry.addData("Identified", visionProcessor.getSelection());
         telemetry.addLine("");
-        telemetry.addData("Left selection saturation", FirstVisionProcessor.getAvgSaturation(FirstVisionProcessor.hsvMat, FirstVisionProcessor.rectLeft));
-        telemetry.addData("Middle selection saturation", FirstVisionProcessor.getAvgSaturation(FirstVisionProcessor.hsvMat, FirstVisionProcessor.rectMiddle));
-        telemetry.addData("Right selection saturation", FirstVisionProcessor.getAvgSaturation(FirstVisionProcessor.hsvMat, FirstVisionProcessor.rectRight));
+        telemetry.addData("Left selection saturation", visionProcessor.getSaturation(SpikeMarkDetector.LEFT));
+        telemetry.addData("Middle selection saturation", visionProcessor.getSaturation(SpikeMarkDetector.MIDDLE));
+        telemetry.addData("Right selection saturation", visionProcessor.getSaturation(SpikeMarkDetector.RIGHT));
+        telemetry.addData("Vision memory", visionProcessor.getTracker().summary());
 
         /* Avg Saturation Results (parentheses indicate control/default value)
         Blue:
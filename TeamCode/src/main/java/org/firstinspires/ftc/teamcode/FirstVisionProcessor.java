@@ -9,50 +9,148 @@ import android.graphics.Paint;
 
 import org.firstinspires.ftc.robotcore.internal.camera.calibration.CameraCalibration;
 import org.firstinspires.ftc.vision.VisionProcessor;
-import org.opencv.core.Core;
 import org.opencv.core.Mat;
 import org.opencv.core.Rect;
-import org.opencv.core.Scalar;
-import org.opencv.imgproc.Imgproc;
+
+import java.util.concurrent.atomic.AtomicReference;
 
 public class FirstVisionProcessor implements VisionProcessor {
     public static Rect rectLeft = new Rect(30, 100, 80, 80);
     public static Rect rectMiddle = new Rect(275, 50, 80, 80);
     public static Rect rectRight = new Rect(505, 100, 80, 80);
-    static Selected selection = Selected.NONE;
 
+    // The newest frame's result. processFrame() runs on the camera thread and the OpMode reads
+    // this from its own thread; the AtomicReference makes sure it sees the whole Result, and
+    // the newest one, whether or not the preview is being drawn.
+    private final AtomicReference<Result> latest = new AtomicReference<>(Result.NONE);
+    private long sequence = 0;
+
+
+
+    // Counts the Mats made here and in the detector (see MatTracker)
+    private final MatTracker tracker = new MatTracker("FirstVisionProcessor");
+    // The whole frame in HSV, only used when not roiOnly
+    private final Mat hsvMat = tracker.create("FirstVisionProcessor hsv");
+
+    // Only convert the three rectangles to HSV instead of the whole frame (see SpikeMarkDetector)
+    private final boolean roiOnly;
+    private SpikeMarkDetector detector;
+    // Left, middle and right in the frame being processed (camera thread only)
+    private final double[] saturations = new double[3];
 
+    // Decides from the last few frames, not just one (see SelectionVoter)
+    private final SelectionVoter voter = new SelectionVoter();
 
-    public static Mat submat = new Mat();
-    public static Mat hsvMat = new Mat();
+    public FirstVisionProcessor() {
+        this(true);
+    }
+
+    /**
+     * @param roiOnly False to go back to converting the whole frame.
+     */
+    public FirstVisionProcessor(boolean roiOnly) {
+        this.roiOnly = roiOnly;
+    }
 
     @Override
     public void init(int width, int height, CameraCalibration calibration) {
+        // The rectangles are read here, so change them before the camera starts
+        if (roiOnly && detector == null) {
+            detector = new SpikeMarkDetector(rectLeft, rectMiddle, rectRight, tracker);
+        }
     }
 
+    // Selected.values() makes a new array every call, so keep one around
+    private static final Selected[] SELECTIONS = Selected.values();
+
     @Override
     public Object processFrame(Mat frame, long captureTimeNanos) {
-        Imgproc.cvtColor(frame, hsvMat, Imgproc.COLOR_RGB2HSV);
-
-        double satRectLeft = getAvgSaturation(hsvMat, rectLeft);
-        double satRectMiddle = getAvgSaturation(hsvMat, rectMiddle);
-        double satRectRight = getAvgSaturation(hsvMat, rectRight);
-
-        if ((satRectLeft > satRectMiddle) && (satRectLeft > satRectRight)) {
-            return Selected.LEFT;
-        } else if ((satRectMiddle > satRectLeft) && (satRectMiddle > satRectRight)) {
-            return Selected.MIDDLE;
-        } else if ((satRectRight > satRectLeft) && (satRectRight > satRectMiddle)) {
-            return Selected.RIGHT;
+        tracker.startFrame();
+        // The actual work is in SpikeMarkDetector so it can be benchmarked off the robot
+        int pick;
+        if (detector != null) {
+            pick = detector.detect(frame);
+            for (int i = 0; i < 3; i++) {
+                saturations[i] = detector.getSaturation(SpikeMarkDetector.LEFT + i);
+            }
         } else {
-            return Selected.NONE;
+            pick = SpikeMarkDetector.detect(frame, hsvMat, rectLeft, rectMiddle, rectRight, saturations);
         }
+        double margin = SpikeMarkDetector.margin(saturations[0], saturations[1], saturations[2]);
+        voter.add(pick, margin);
+
+        Result result = new Result(SELECTIONS[pick], saturations[0], saturations[1], saturations[2],
+                margin, captureTimeNanos, ++sequence);
+        latest.set(result);
+        // Also handed to onDrawFrame() as its userContext
+        return result;
+    }
+
+    /**
+     * @return The result of the newest frame, or Result.NONE before the first one.
+     */
+    public Result getLatestResult() {
+        return latest.get();
+    }
+
+    /**
+     * @return Where the prop is, going by the last few frames (see SelectionVoter).
+     */
+    public Selected getDecision() {
+        return SELECTIONS[voter.getDecision()];
+    }
+
+    /**
+     * @return True once enough frames in a row agree that the decision can be trusted.
+     */
+    public boolean isDecisionLocked() {
+        return voter.isLocked();
+    }
+
+    /**
+     * @return A line for telemetry, like "LEFT (locked, 14/15 frames)"
+     */
+    public String decisionSummary() {
+        return getDecision() + (voter.isLocked() ? " (locked, " : " (not sure, ")
+                + voter.getVotes() + "/" + SelectionVoter.WINDOW + " frames)";
+    }
+
+    /**
+     * Fixes the decision for the rest of the match. Call it when autonomous starts.
+     */
+    public Selected freezeDecision() {
+        return SELECTIONS[voter.freeze()];
     }
 
     static double getAvgSaturation(Mat input, Rect rect) {
-        submat = input.submat(rect);
-        Scalar color = Core.mean(submat);
-        return color.val[1];
+        return SpikeMarkDetector.getAvgSaturation(input, rect);
+    }
+
+    /**
+     * @param side SpikeMarkDetector.LEFT, MIDDLE or RIGHT
+     * @return That rectangle's average saturation in the last frame, for tuning.
+     */
+    public double getSaturation(int side) {
+        return latest.get().getSaturation(side);
+    }
+
+    public MatTracker getTracker() {
+        return tracker;
+    }
+
+    /**
+     * Frees the native memory the detector holds. Close the VisionPortal first, so no frame is
+     * being processed.
+     *
+     * @return The tracker's report, listing any Mat that still hadn't been released.
+     */
+    public String release() {
+        if (detector != null) {
+            detector.release();
+            detector = null;
+        }
+        tracker.release(hsvMat);
+        return tracker.releaseAll();
     }
 
     private android.graphics.Rect makeGraphicsRect(Rect rect, float scaleBmpPxToCanvasPx) {
@@ -78,7 +176,7 @@ public class FirstVisionProcessor implements VisionProcessor {
         android.graphics.Rect drawRectangleMiddle = makeGraphicsRect(rectMiddle, scaleBmpPxToCanvasPx);
         android.graphics.Rect drawRectangleRight = makeGraphicsRect(rectRight, scaleBmpPxToCanvasPx);
 
-        selection = (Selected) userContext;
+        Selected selection = ((Result) userContext).selection;
         switch (selection) {
             case LEFT:
                 canvas.drawRect(drawRectangleLeft, selectedPaint);
@@ -103,8 +201,52 @@ public class FirstVisionProcessor implements VisionProcessor {
         }
     }
 
+    /**
+     * @return The newest frame's pick. For the decision to act on, use getDecision().
+     */
     public Selected getSelection() {
-        return selection;
+        return latest.get().selection;
+    }
+
+    /**
+     * What one frame found. Never changes once it's made, so it's safe to hand between threads.
+     */
+    public static final class Result {
+        static final Result NONE = new Result(Selected.NONE, Double.NaN, Double.NaN, Double.NaN, 0, 0, 0);
+
+        public final Selected selection;
+        public final double saturationLeft;
+        public final double saturationMiddle;
+        public final double saturationRight;
+        public final double margin;             // see SpikeMarkDetector.margin()
+        public final long captureTimeNanos;     // when the camera took the frame, System.nanoTime()
+        public final long sequence;             // counts up by 1 every frame, 0 before the first
+
+        Result(Selected selection, double saturationLeft, double saturationMiddle, double saturationRight,
+               double margin, long captureTimeNanos, long sequence) {
+            this.selection = selection;
+            this.saturationLeft = saturationLeft;
+            this.saturationMiddle = saturationMiddle;
+            this.saturationRight = saturationRight;
+            this.margin = margin;
+            this.captureTimeNanos = captureTimeNanos;
+            this.sequence = sequence;
+        }
+
+        /**
+         * @param side SpikeMarkDetector.LEFT, MIDDLE or RIGHT
+         */
+        public double getSaturation(int side) {
+            return side == SpikeMarkDetector.LEFT ? saturationLeft
+                    : side == SpikeMarkDetector.MIDDLE ? saturationMiddle : saturationRight;
+        }
+
+        /**
+         * @return How old the frame is, in seconds, or infinity if there hasn't been one.
+         */
+        public double ageSeconds(long nowNanos) {
+            return sequence == 0 ? Double.POSITIVE_INFINITY : (nowNanos - captureTimeNanos) / 1e9;
+        }
     }
 
     public enum Selected {
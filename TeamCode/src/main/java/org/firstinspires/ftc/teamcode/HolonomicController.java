@@ -0,0 +1,160 @@
+package org.firstinspires.ftc.teamcode;
+
+/**
+ * Moves the robot to a pose (x, y and heading at the same time) using the mecanum wheels, the
+ * way the TeleOp drives, instead of turn, drive, turn.
+ *
+ * The move follows a MotionProfile along the straight line from where the robot started to the
+ * target, and the heading turns in step with the distance covered. Every cycle the wheels get
+ * the velocity the profile asks for (feedforward), plus a correction towards where the profile
+ * says the robot should be right now, using the pose from the Localizer (feedback). The field
+ * velocity is then rotated into the robot's frame and turned into wheel powers.
+ *
+ * Uses the same field coordinates as Localizer. Pure Java, so it can run on a laptop.
+ */
+public class HolonomicController {
+
+    private final double kV;             // power per inch per second of wheel speed
+    private final double kA;             // power per inch per second^2
+    private final double kP;             // inches per second per inch of position error
+    private final double kHeading;       // degrees per second per degree of heading error
+    private final double halfSpan;       // (track width + wheel base) / 2, in inches
+    private final double strafeMultiplier;
+    private final double forwardSign;
+
+    private MotionProfile profile;
+    private double startX;
+    private double startY;
+    private double startHeading;
+    private double unitX;
+    private double unitY;
+    private double headingChange;
+    private double targetX;
+    private double targetY;
+    private double targetHeading;
+
+    private double positionError = 0;
+    private double headingError = 0;
+
+    // Robot frame commands from the last update(), for telemetry
+    private double forwardPower = 0;
+    private double leftPower = 0;
+    private double turnPower = 0;
+
+    /**
+     * @param halfSpan         Half of (track width + wheel base), in inches. Sets how fast the wheels move when turning.
+     * @param strafeMultiplier Same as Localizer's: how much of the wheel motion turns into sideways motion.
+     * @param forwardSign      +1 if positive power drives the robot forward, -1 if it drives it backward.
+     */
+    public HolonomicController(double kV, double kA, double kP, double kHeading,
+                               double halfSpan, double strafeMultiplier, double forwardSign) {
+        this.kV = kV;
+        this.kA = kA;
+        this.kP = kP;
+        this.kHeading = kHeading;
+        this.halfSpan = halfSpan;
+        this.strafeMultiplier = strafeMultiplier;
+        this.forwardSign = forwardSign;
+    }
+
+    /**
+     * Starts a move of (dx, dy) from the current pose, ending up facing endHeading.
+     *
+     * @param profile A profile for the length of the move (hypot(dx, dy)), in inches.
+     */
+    public void start(MotionProfile profile, double dx, double dy, double endHeading,
+                      double x, double y, double heading) {
+        this.profile = profile;
+        startX = x;
+        startY = y;
+        startHeading = heading;
+        targetX = x + dx;
+        targetY = y + dy;
+        targetHeading = endHeading;
+        headingChange = DriveControl.headingError(endHeading, heading);
+
+        double length = Math.hypot(dx, dy);
+        unitX = length > 0 ? dx / length : 0;
+        unitY = length > 0 ? dy / length : 0;
+    }
+
+    /**
+     * Works out the wheel powers for this cycle.
+     *
+     * @param t       Seconds since start().
+     * @param heading Degrees, counter-clockwise.
+     * @param out     Gets the four wheel powers, indexed like MecanumKinematics.
+     */
+    public void update(double t, double x, double y, double heading, double[] out) {
+        double length = Math.abs(profile.getDistance());
+        double s = profile.getPosition(t);
+        double v = profile.getVelocity(t);
+        double a = profile.getAcceleration(t);
+        double progress = length > 0 ? s / length : 1;
+
+        // Where the profile says we should be, and how far off we are
+        double referenceX = startX + unitX * s;
+        double referenceY = startY + unitY * s;
+        double referenceHeading = startHeading + headingChange * progress;
+        double errorX = referenceX - x;
+        double errorY = referenceY - y;
+        double errorHeading = DriveControl.headingError(referenceHeading, heading);
+
+        positionError = Math.hypot(targetX - x, targetY - y);
+        headingError = DriveControl.headingError(targetHeading, heading);
+
+        // Field velocity and acceleration, then into the robot's frame
+        double velocityX = unitX * v + kP * errorX;
+        double velocityY = unitY * v + kP * errorY;
+        double cos = Math.cos(Math.toRadians(heading));
+        double sin = Math.sin(Math.toRadians(heading));
+        double forward = velocityX * cos + velocityY * sin;
+        double left = -velocityX * sin + velocityY * cos;
+        double forwardAcceleration = a * (unitX * cos + unitY * sin);
+        double leftAcceleration = a * (-unitX * sin + unitY * cos);
+
+        // Turn rate in degrees per second, then as a wheel surface speed
+        double turnRate = (length > 0 ? headingChange * v / length : 0) + kHeading * errorHeading;
+        double turnSpeed = Math.toRadians(turnRate) * halfSpan;
+
+        forwardPower = kV * forward + kA * forwardAcceleration;
+        leftPower = (kV * left + kA * leftAcceleration) / strafeMultiplier;
+        turnPower = kV * turnSpeed;
+
+        // MecanumKinematics takes strafe right and turn clockwise as positive
+        MecanumKinematics.wheelPowers(forwardPower, -leftPower, -turnPower, out);
+        for (int i = 0; i < 4; i++) {
+            out[i] *= forwardSign;
+        }
+    }
+
+    /**
+     * @return Inches from the target at the last update().
+     */
+    public double getPositionError() {
+        return positionError;
+    }
+
+    /**
+     * @return Degrees from the target heading at the last update().
+     */
+    public double getHeadingError() {
+        return headingError;
+    }
+
+    public double getDuration() {
+        return profile.getDuration();
+    }
+
+    public double getForwardPower() {
+        return forwardPower;
+    }
+
+    public double getLeftPower() {
+        return leftPower;
+    }
+
+    public double getTurnPower() {
+        return turnPower;
+    }
+}
@@ -0,0 +1,208 @@
+package org.firstinspires.ftc.teamcode;
+
+import com.qualcomm.robotcore.hardware.IMU;
+import com.qualcomm.robotcore.util.RobotLog;
+
+import org.firstinspires.ftc.robotcore.external.navigation.AngleUnit;
+
+/**
+ * Reads the IMU on its own thread so the control loop never has to wait for the I2C read.
+ * The sampler thread is the only one that touches the IMU and the only one that writes; it
+ * publishes each reading as a new immutable Sample through a volatile field, so readers always
+ * get a complete sample without any locking. Resetting the yaw goes through it too (see
+ * requestYawReset()), so no reading from before a reset can be published after it.
+ *
+ * Remember to call stop() when the OpMode ends, or the thread keeps reading the IMU.
+ *
+ * A failed read (an I2C hiccup) is logged and the thread carries on. If the sample gets old
+ * anyway, RobotState.Reader keeps using it, marks the state imuStale, and calls restartIfDead().
+ *
+ * Without the thread (like in a simulation), call poll() once per cycle instead.
+ */
+public class ImuSampler implements Runnable {
+
+    /**
+     * One IMU reading. Never changes after it's published.
+     */
+    public static class Sample {
+        public final double yaw;            // degrees, +ve is CCW
+        public final double yawRate;        // degrees per second, +ve is CCW
+        public final long timestampNanos;   // the sampler's NanoClock when the reading came back
+
+        public Sample(double yaw, double yawRate, long timestampNanos) {
+            this.yaw = yaw;
+            this.yawRate = yawRate;
+            this.timestampNanos = timestampNanos;
+        }
+
+        /**
+         * @param nowNanos The time now, on the same NanoClock as the sampler.
+         * @return How old this sample is, in milliseconds.
+         */
+        public double ageMs(long nowNanos) {
+            return (nowNanos - timestampNanos) / 1e6;
+        }
+    }
+
+    private final IMU imu;
+    private final NanoClock clock;
+    private volatile Sample latest;
+    private volatile boolean running = false;
+    // Yaw resets asked for (only the control thread counts these up) and done (only the sampler does)
+    private volatile int yawResetsRequested = 0;
+    private volatile int yawResetsDone = 0;
+    private Thread thread = null;     // only start(), stop() and restartIfDead() change it
+    private volatile long sampleCount = 0;
+    private volatile long errorCount = 0;
+    private int restartCount = 0;
+
+    // Only the first few failures go in the log, so a broken IMU doesn't fill it up
+    static final int MAX_LOGGED_ERRORS = 5;
+    // Wait this long after a failed read before trying again
+    static final long ERROR_RETRY_MS = 5;
+
+    public ImuSampler(IMU imu) {
+        this(imu, NanoClock.SYSTEM);
+    }
+
+    public ImuSampler(IMU imu, NanoClock clock) {
+        this.imu = imu;
+        this.clock = clock;
+        // Read once right away so there's always a sample, even before the thread gets going.
+        latest = readImu();
+    }
+
+    public void start() {
+        if (running) return;
+        running = true;
+        startThread();
+    }
+
+    private void startThread() {
+        thread = new Thread(this, "ImuSampler");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Starts a new thread if the sampler is meant to be running but its thread has died. A thread
+     * that's still stuck in a read is left alone, so there's never more than one.
+     *
+     * @return True if it had to restart.
+     */
+    public boolean restartIfDead() {
+        if (!running || (thread != null && thread.isAlive())) return false;
+        restartCount++;
+        RobotLog.ww("ImuSampler", "Sampler thread died, restarting it");
+        startThread();
+        return true;
+    }
+
+    public void stop() {
+        running = false;
+        if (thread != null) {
+            thread.interrupt();
+            thread = null;
+        }
+    }
+
+    @Override
+    public void run() {
+        // The IMU read itself blocks until the hub answers, so this runs at the rate the IMU can give us.
+        while (running && !Thread.currentThread().isInterrupted()) {
+            try {
+                sample();
+            } catch (RuntimeException e) {
+                // Keep going: if the thread died here, the heading would freeze for the rest of the match
+                if (++errorCount <= MAX_LOGGED_ERRORS) {
+                    RobotLog.ee("ImuSampler", e, "IMU read failed");
+                }
+                try {
+                    Thread.sleep(ERROR_RETRY_MS);
+                } catch (InterruptedException ie) {
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Does any yaw reset that's been asked for, then reads the IMU and publishes the sample.
+     * The reset only counts as done once a sample from after it is out.
+     */
+    private void sample() {
+        int requested = yawResetsRequested;
+        if (requested != yawResetsDone) imu.resetYaw();
+        latest = readImu();
+        sampleCount++;
+        yawResetsDone = requested;
+    }
+
+    /**
+     * For when there's no sampler thread (a simulation): resets and reads the IMU on the calling
+     * thread, which is then the only one using it. Does nothing while the thread is running.
+     * Throws whatever the IMU read throws.
+     */
+    public void poll() {
+        if (!running) sample();
+    }
+
+    /**
+     * Asks the sampler to reset the IMU's yaw to 0 before its next read. Until isYawResetPending()
+     * goes false, getLatest() can still be from before the reset.
+     * With no thread running, there's nobody else using the IMU, so it's done right away.
+     */
+    public void requestYawReset() {
+        yawResetsRequested++;
+        if (!running) sample();
+    }
+
+    /**
+     * @return True until the yaw reset asked for by requestYawReset() is done, and getLatest() is
+     * a reading from after it.
+     */
+    public boolean isYawResetPending() {
+        return yawResetsDone != yawResetsRequested;
+    }
+
+    /**
+     * @return True if the sampler thread has been started and not stopped.
+     */
+    public boolean isRunning() {
+        return running;
+    }
+
+    private Sample readImu() {
+        double yaw = imu.getRobotYawPitchRollAngles().getYaw(AngleUnit.DEGREES);
+        double yawRate = imu.getRobotAngularVelocity(AngleUnit.DEGREES).zRotationRate;
+        return new Sample(yaw, yawRate, clock.nanoTime());
+    }
+
+    /**
+     * @return The most recent IMU reading. Never blocks.
+     */
+    public Sample getLatest() {
+        return latest;
+    }
+
+    /**
+     * @return How many samples the thread has read so far.
+     */
+    public long getSampleCount() {
+        return sampleCount;
+    }
+
+    /**
+     * @return How many IMU reads have failed on the sampler thread.
+     */
+    public long getErrorCount() {
+        return errorCount;
+    }
+
+    /**
+     * @return How many times restartIfDead() has had to start a new thread.
+     */
+    public int getRestartCount() {
+        return restartCount;
+    }
+}
@@ -2,37 +2,47 @@ package org.firstinspires.ftc.teamcode;
 
 import com.qualcomm.robotcore.exception.RobotCoreException;
 import com.qualcomm.robotcore.hardware.DcMotor;
+import com.qualcomm.robotcore.hardware.DcMotorEx;
 import com.qualcomm.robotcore.hardware.DcMotorSimple;
 import com.qualcomm.robotcore.hardware.Gamepad;
 import com.qualcomm.robotcore.hardware.HardwareMap;
 import com.qualcomm.robotcore.util.ElapsedTime;
 import com.qualcomm.robotcore.util.Range;
 
-import org.firstinspires.ftc.robotcore.external.Telemetry;
-
 public class Intake {
 
     protected DcMotor intakeMotor;
-    private final Telemetry telemetry;
+    private final ThrottledTelemetry telemetry;
     private final Gamepad gamepad;
     static final double MAX_SPEED = 0.85;
 
+    private final int powerSlot;
+
 
-    public Intake(HardwareMap hardwareMap, Telemetry telemetry, Gamepad gamepad) {
+    public Intake(HardwareMap hardwareMap, ThrottledTelemetry telemetry, Gamepad gamepad) {
         this.telemetry = telemetry;
         this.gamepad = gamepad;
-        intakeMotor = hardwareMap.get(DcMotor.class, "intake"); //Define hardware
+        intakeMotor = new CachingMotor(hardwareMap.get(DcMotorEx.class, "intake")); //Define hardware
         intakeMotor.setDirection(DcMotorSimple.Direction.REVERSE);
 
         intakeMotor.setZeroPowerBehavior(DcMotor.ZeroPowerBehavior.BRAKE);
 
         intakeMotor.setMode(DcMotor.RunMode.RUN_WITHOUT_ENCODER);
+
+        powerSlot = telemetry.addSlot("Intake Power:", "%.2f");
     }
 
 
+    /**
+     * Keep the intake speed the same whatever the battery is at (see CachingMotor.setVoltageCompensation()).
+     */
+    public void setVoltageCompensation(VoltageCompensation compensation) {
+        ((CachingMotor) intakeMotor).setVoltageCompensation(compensation);
+    }
+
     public void loop() {
         readGamepad();
-        telemetry.addData("Intake Power:", intakeMotor.getPower());
+        telemetry.set(powerSlot, intakeMotor.getPower());
     }
 
     private void readGamepad() {
@@ -0,0 +1,64 @@
+package org.firstinspires.ftc.teamcode;
+
+/**
+ * Counts how long something took, in fixed-width buckets, so we can get percentiles afterwards.
+ * All the storage is allocated up front; record() only increments a counter, so timing a loop
+ * doesn't create garbage (and garbage collection pauses) in the loop being timed.
+ */
+public class LatencyHistogram {
+
+    private final long bucketWidthNanos;
+    private final long[] counts;    // the last bucket also counts everything that's too long for the others
+    private long total = 0;
+    private long maxNanos = 0;
+
+    /**
+     * @param bucketWidthUs Width of each bucket, in microseconds. This is the resolution of the percentiles.
+     * @param bucketCount   Number of buckets. Anything longer than bucketWidthUs * bucketCount goes in the last one.
+     */
+    public LatencyHistogram(int bucketWidthUs, int bucketCount) {
+        this.bucketWidthNanos = bucketWidthUs * 1000L;
+        this.counts = new long[bucketCount];
+    }
+
+    public void record(long nanos) {
+        if (nanos < 0) nanos = 0;
+        int bucket = (int) Math.min(nanos / bucketWidthNanos, counts.length - 1);
+        counts[bucket]++;
+        total++;
+        if (nanos > maxNanos) maxNanos = nanos;
+    }
+
+    public void reset() {
+        for (int i = 0; i < counts.length; i++) counts[i] = 0;
+        total = 0;
+        maxNanos = 0;
+    }
+
+    public long getCount() {
+        return total;
+    }
+
+    /**
+     * @param fraction Which percentile you want, from 0 to 1 (e.g. 0.95 for p95)
+     * @return The upper edge of the bucket holding that percentile, in milliseconds. 0 if nothing was recorded.
+     */
+    public double getPercentileMs(double fraction) {
+        if (total == 0) return 0;
+        long rank = (long) Math.ceil(fraction * total);
+        if (rank < 1) rank = 1;
+        long seen = 0;
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                // Never report more than the slowest time we've actually seen
+                return Math.min((i + 1) * bucketWidthNanos, maxNanos) / 1e6;
+            }
+        }
+        return maxNanos / 1e6;
+    }
+
+    public double getMaxMs() {
+        return maxNanos / 1e6;
+    }
+}
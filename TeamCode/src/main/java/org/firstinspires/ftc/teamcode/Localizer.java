@@ -0,0 +1,134 @@
+package org.firstinspires.ftc.teamcode;
+
+/**
+ * Keeps track of where the robot is on the field, from the four drive encoders and the IMU.
+ * Call update() once per cycle with the values from that cycle's RobotState.
+ *
+ * The encoders say how far the robot moved forward and sideways since the last cycle (mecanum
+ * forward kinematics), and the IMU says which way it's facing. The IMU heading is used instead
+ * of working out the rotation from the wheels, since mecanum wheels slip a lot when turning.
+ * Each cycle's motion is integrated along an arc, so turning while driving doesn't add error.
+ *
+ * Field coordinates are the same as SimRobot's: x is forward from where the pose was last set,
+ * y is to the left, and heading is counter-clockwise in degrees. Distances are in inches.
+ * Pure Java, so it can run on a laptop.
+ */
+public class Localizer {
+
+    private final double ticksPerInch;
+    private final double forwardSign;
+    // Mecanum wheels slip sideways, so strafing usually goes a bit less far than the encoders say
+    private double strafeMultiplier = 1.0;
+
+    private double x = 0;
+    private double y = 0;
+    private double heading = 0;      // radians
+    private double yawOffset = 0;    // degrees, subtracted from the IMU yaw
+
+    private boolean hasLastReading = false;
+    private int lastLeftFront;
+    private int lastLeftBack;
+    private int lastRightFront;
+    private int lastRightBack;
+    private double lastYaw;
+
+    /**
+     * @param ticksPerInch How many encoder counts the wheels turn per inch of travel (the real number, no fudge factors).
+     * @param forwardSign  +1 if the encoder counts go up when the robot drives forward, -1 if they go down
+     *                     (which depends on the motor directions the OpMode sets).
+     */
+    public Localizer(double ticksPerInch, double forwardSign) {
+        this.ticksPerInch = ticksPerInch;
+        this.forwardSign = forwardSign;
+    }
+
+    public void setStrafeMultiplier(double strafeMultiplier) {
+        this.strafeMultiplier = strafeMultiplier;
+    }
+
+    /**
+     * @param yaw The raw IMU yaw this cycle, in degrees.
+     */
+    public void update(int leftFront, int leftBack, int rightFront, int rightBack, double yaw) {
+        if (!hasLastReading) {
+            // Nothing to compare against yet
+            lastLeftFront = leftFront;
+            lastLeftBack = leftBack;
+            lastRightFront = rightFront;
+            lastRightBack = rightBack;
+            lastYaw = yaw;
+            heading = Math.toRadians(DriveControl.normalizeDegrees(yaw - yawOffset));
+            hasLastReading = true;
+            return;
+        }
+
+        double scale = forwardSign / ticksPerInch;
+        double dLeftFront = (leftFront - lastLeftFront) * scale;
+        double dLeftBack = (leftBack - lastLeftBack) * scale;
+        double dRightFront = (rightFront - lastRightFront) * scale;
+        double dRightBack = (rightBack - lastRightBack) * scale;
+        lastLeftFront = leftFront;
+        lastLeftBack = leftBack;
+        lastRightFront = rightFront;
+        lastRightBack = rightBack;
+        lastYaw = yaw;
+
+        // Mecanum forward kinematics, in the robot's frame
+        double forward = (dLeftFront + dLeftBack + dRightFront + dRightBack) / 4;
+        double left = (-dLeftFront + dLeftBack + dRightFront - dRightBack) / 4 * strafeMultiplier;
+
+        double newHeading = Math.toRadians(DriveControl.normalizeDegrees(yaw - yawOffset));
+        double dHeading = Math.toRadians(DriveControl.normalizeDegrees(Math.toDegrees(newHeading - heading)));
+
+        // Follow an arc instead of a straight line: for small turns sin(dh)/dh is about 1
+        double sinTerm;
+        double cosTerm;
+        if (Math.abs(dHeading) < 1e-6) {
+            sinTerm = 1 - dHeading * dHeading / 6;
+            cosTerm = dHeading / 2;
+        } else {
+            sinTerm = Math.sin(dHeading) / dHeading;
+            cosTerm = (1 - Math.cos(dHeading)) / dHeading;
+        }
+        double dx = forward * sinTerm - left * cosTerm;
+        double dy = forward * cosTerm + left * sinTerm;
+
+        double cos = Math.cos(heading);
+        double sin = Math.sin(heading);
+        x += dx * cos - dy * sin;
+        y += dx * sin + dy * cos;
+        heading = newHeading;
+    }
+
+    /**
+     * Tell the localizer where the robot is. Call it after at least one update() so it knows the
+     * current IMU yaw; the heading is set by offsetting the yaw.
+     *
+     * @param heading Degrees, counter-clockwise.
+     */
+    public void setPose(double x, double y, double heading) {
+        this.x = x;
+        this.y = y;
+        yawOffset = lastYaw - heading;
+        this.heading = Math.toRadians(DriveControl.normalizeDegrees(heading));
+    }
+
+    public double getX() {
+        return x;
+    }
+
+    public double getY() {
+        return y;
+    }
+
+    /**
+     * @return Heading in degrees, counter-clockwise, within +/- 180.
+     */
+    public double getHeading() {
+        return Math.toDegrees(heading);
+    }
+
+    public double getHeadingRadians() {
+        return heading;
+    }
+}
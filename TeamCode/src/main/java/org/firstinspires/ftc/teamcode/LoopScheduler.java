@@ -0,0 +1,142 @@
+package org.firstinspires.ftc.teamcode;
+
+/**
+ * Runs a control loop at a fixed period so the P-gains behave the same from run to run.
+ * Call sync() once at the end of every loop; it waits out whatever is left of the period.
+ * If the loop body took longer than the period, the cycle is counted as an overrun and the
+ * schedule restarts from now instead of trying to "catch up" with a burst of short cycles.
+ */
+public class LoopScheduler {
+
+    private final NanoClock clock;
+    private long targetPeriodNanos;
+    private long nextDeadlineNanos = 0;
+    private long lastCycleStartNanos = 0;
+
+    private long cycleCount = 0;
+    private long overrunCount = 0;
+    private double lastPeriodMs = 0;
+    private double maxJitterMs = 0;
+    private double jitterSumMs = 0;
+
+    // When set, sync() runs this instead of waiting (see SimRobot)
+    private Runnable simulatedCycle = null;
+
+    /**
+     * @param targetPeriodMs How long each loop should take, in milliseconds. 0 means run as fast as possible.
+     */
+    public LoopScheduler(double targetPeriodMs) {
+        this(targetPeriodMs, NanoClock.SYSTEM);
+    }
+
+    /**
+     * @param clock Where to get the time. Anything but NanoClock.SYSTEM needs simulate() too, since
+     *              waiting for a simulated clock would wait forever.
+     */
+    public LoopScheduler(double targetPeriodMs, NanoClock clock) {
+        this.clock = clock;
+        setTargetPeriodMs(targetPeriodMs);
+    }
+
+    public void setTargetPeriodMs(double targetPeriodMs) {
+        targetPeriodNanos = (long) (Math.max(0, targetPeriodMs) * 1e6);
+    }
+
+    public double getTargetPeriodMs() {
+        return targetPeriodNanos / 1e6;
+    }
+
+    /**
+     * Run in simulated time: instead of waiting out each period, sync() runs stepOneCycle (which
+     * should move the simulation forward by one period) and returns right away.
+     * Pass null to go back to real time.
+     */
+    public void simulate(Runnable stepOneCycle) {
+        simulatedCycle = stepOneCycle;
+    }
+
+    /**
+     * Start a new schedule. Call this right before the first cycle of a loop so the time spent
+     * between loops (mode switches, sleeps...) isn't counted as an overrun.
+     */
+    public void reset() {
+        long now = clock.nanoTime();
+        nextDeadlineNanos = now + targetPeriodNanos;
+        lastCycleStartNanos = now;
+    }
+
+    /**
+     * Waits until the end of the current period, then starts the next one.
+     */
+    public void sync() {
+        if (simulatedCycle != null) {
+            simulatedCycle.run();
+            lastPeriodMs = getTargetPeriodMs();
+            cycleCount++;
+            return;
+        }
+
+        if (lastCycleStartNanos == 0) {
+            reset();
+        }
+
+        long now = clock.nanoTime();
+        if (now > nextDeadlineNanos) {
+            // We took too long. Don't wait, and start the next period from right now.
+            if (targetPeriodNanos > 0) overrunCount++;
+            nextDeadlineNanos = now;
+        } else {
+            waitUntil(nextDeadlineNanos);
+            now = clock.nanoTime();
+        }
+
+        lastPeriodMs = (now - lastCycleStartNanos) / 1e6;
+        double jitterMs = Math.abs(lastPeriodMs - getTargetPeriodMs());
+        if (jitterMs > maxJitterMs) maxJitterMs = jitterMs;
+        jitterSumMs += jitterMs;
+        cycleCount++;
+
+        lastCycleStartNanos = now;
+        nextDeadlineNanos += targetPeriodNanos;
+    }
+
+    private void waitUntil(long deadlineNanos) {
+        // Sleep for the bulk of the wait, then spin for the last millisecond since
+        // Thread.sleep() on the Control Hub usually oversleeps by about that much.
+        long remaining = deadlineNanos - clock.nanoTime();
+        if (remaining > 2_000_000) {
+            try {
+                Thread.sleep((remaining - 1_000_000) / 1_000_000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+        while (clock.nanoTime() < deadlineNanos) {
+            Thread.yield();
+        }
+    }
+
+    public long getCycleCount() {
+        return cycleCount;
+    }
+
+    public long getOverrunCount() {
+        return overrunCount;
+    }
+
+    /**
+     * @return How long the last full cycle took, in milliseconds.
+     */
+    public double getLastPeriodMs() {
+        return lastPeriodMs;
+    }
+
+    public double getMaxJitterMs() {
+        return maxJitterMs;
+    }
+
+    public double getAverageJitterMs() {
+        return cycleCount == 0 ? 0 : jitterSumMs / cycleCount;
+    }
+}
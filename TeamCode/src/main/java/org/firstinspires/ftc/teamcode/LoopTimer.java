@@ -0,0 +1,94 @@
+package org.firstinspires.ftc.teamcode;
+
+import org.firstinspires.ftc.robotcore.external.Telemetry;
+
+/**
+ * Times each phase of a control loop separately: reading sensors, computing, writing to the
+ * hardware and sending telemetry. Call mark(phase) right after the code for a phase finishes;
+ * the time since the previous mark is added to that phase. A phase can be marked more than once
+ * per cycle. endCycle() records the totals for the cycle into one histogram per phase.
+ *
+ * Nothing here allocates except addTelemetry(), so it's safe to leave on during matches.
+ */
+public class LoopTimer {
+
+    public static final int SENSE = 0;
+    public static final int COMPUTE = 1;
+    public static final int ACTUATE = 2;
+    public static final int TELEMETRY = 3;
+    private static final String[] PHASE_NAMES = {"Sense", "Compute", "Actuate", "Telemetry"};
+
+    // 50us buckets up to 50ms. Anything slower than that is a problem no matter what the exact number is.
+    private static final int BUCKET_WIDTH_US = 50;
+    private static final int BUCKET_COUNT = 1000;
+
+    private final LatencyHistogram[] histograms = new LatencyHistogram[PHASE_NAMES.length];
+    private final long[] cycleNanos = new long[PHASE_NAMES.length];
+    private long lastMarkNanos = 0;
+
+    public LoopTimer() {
+        for (int i = 0; i < histograms.length; i++) {
+            histograms[i] = new LatencyHistogram(BUCKET_WIDTH_US, BUCKET_COUNT);
+        }
+    }
+
+    /**
+     * Start timing from now, without counting the time since the last mark towards any phase.
+     * Use this after waiting for the next cycle. Use startCycle() instead when starting a new loop.
+     */
+    public void restart() {
+        lastMarkNanos = System.nanoTime();
+    }
+
+    /**
+     * Throw away anything marked since the last endCycle() and start a fresh cycle from now.
+     */
+    public void startCycle() {
+        for (int i = 0; i < cycleNanos.length; i++) {
+            cycleNanos[i] = 0;
+        }
+        restart();
+    }
+
+    /**
+     * Adds the time since the last mark to the given phase.
+     */
+    public void mark(int phase) {
+        long now = System.nanoTime();
+        if (lastMarkNanos != 0) {
+            cycleNanos[phase] += now - lastMarkNanos;
+        }
+        lastMarkNanos = now;
+    }
+
+    /**
+     * Records this cycle's time for every phase, and starts a new cycle.
+     */
+    public void endCycle() {
+        for (int i = 0; i < cycleNanos.length; i++) {
+            histograms[i].record(cycleNanos[i]);
+            cycleNanos[i] = 0;
+        }
+    }
+
+    public LatencyHistogram getHistogram(int phase) {
+        return histograms[phase];
+    }
+
+    public void reset() {
+        for (LatencyHistogram histogram : histograms) {
+            histogram.reset();
+        }
+    }
+
+    /**
+     * Adds one line per phase with its p50/p95/p99/max in milliseconds.
+     */
+    public void addTelemetry(Telemetry telemetry) {
+        for (int i = 0; i < histograms.length; i++) {
+            LatencyHistogram h = histograms[i];
+            telemetry.addData(PHASE_NAMES[i] + " p50/95/99/max", "%5.2f %5.2f %5.2f %5.2f ms",
+                    h.getPercentileMs(0.50), h.getPercentileMs(0.95), h.getPercentileMs(0.99), h.getMaxMs());
+        }
+    }
+}
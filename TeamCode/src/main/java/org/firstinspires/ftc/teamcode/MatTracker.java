@@ -0,0 +1,158 @@
+package org.firstinspires.ftc.teamcode;
+
+import org.opencv.core.Mat;
+import org.opencv.core.Rect;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Keeps track of the OpenCV Mats a vision processor makes. A Mat's pixels are native memory, so
+ * the Java GC doesn't know how big it is and won't hurry to free it, and a Mat that's never
+ * release()d can sit there for the whole init loop. Make Mats through here (create(), submat())
+ * and release them through here, and it can tell you:
+ *  - how many Mats are alive, and how many bytes of pixels they hold
+ *  - how many Mats were made per frame (should be 0 once the processor is warmed up)
+ *  - which Mats were never released, when the OpMode stops (releaseAll() frees them)
+ *
+ * Submats share their parent's pixels, so they count as a Mat but not as bytes.
+ *
+ * The vision thread makes the Mats and the OpMode thread reads the numbers, so the methods are
+ * synchronized. Pure Java (and OpenCV), so it can run on a laptop.
+ */
+public class MatTracker {
+
+    private final String name;
+
+    // Live Mats, with what they're for, and whether they're a submat
+    private final List<Mat> mats = new ArrayList<>();
+    private final List<String> labels = new ArrayList<>();
+    private final List<Boolean> views = new ArrayList<>();
+
+    private long totalAllocations = 0;
+    private long frames = 0;
+    private int frameAllocations = 0;      // so far in this frame
+    private int lastFrameAllocations = 0;
+
+    public MatTracker(String name) {
+        this.name = name;
+    }
+
+    /**
+     * @return An empty Mat. Its size (for liveBytes()) is whatever it has when you ask.
+     */
+    public synchronized Mat create(String label) {
+        return track(new Mat(), label, false);
+    }
+
+    public synchronized Mat create(String label, int rows, int cols, int type) {
+        return track(new Mat(rows, cols, type), label, false);
+    }
+
+    /**
+     * @return A view of part of parent. Release it before the parent.
+     */
+    public synchronized Mat submat(String label, Mat parent, Rect rect) {
+        return track(parent.submat(rect), label, true);
+    }
+
+    private Mat track(Mat mat, String label, boolean view) {
+        mats.add(mat);
+        labels.add(label);
+        views.add(view);
+        totalAllocations++;
+        frameAllocations++;
+        return mat;
+    }
+
+    /**
+     * Releases the Mat and stops tracking it. Does nothing for null, so it's safe in cleanup code.
+     */
+    public synchronized void release(Mat mat) {
+        if (mat == null) return;
+        for (int i = 0; i < mats.size(); i++) {
+            if (mats.get(i) == mat) {
+                mats.remove(i);
+                labels.remove(i);
+                views.remove(i);
+                break;
+            }
+        }
+        mat.release();
+    }
+
+    /**
+     * Call once at the start of every processFrame(), so allocations can be counted per frame.
+     */
+    public synchronized void startFrame() {
+        if (frames > 0) lastFrameAllocations = frameAllocations;
+        frameAllocations = 0;
+        frames++;
+    }
+
+    public synchronized int getLiveMats() {
+        return mats.size();
+    }
+
+    /**
+     * @return Bytes of pixels held by the live Mats (not counting submats).
+     */
+    public synchronized long getLiveBytes() {
+        long bytes = 0;
+        for (int i = 0; i < mats.size(); i++) {
+            if (!views.get(i)) {
+                Mat mat = mats.get(i);
+                bytes += mat.total() * mat.elemSize();
+            }
+        }
+        return bytes;
+    }
+
+    /**
+     * @return How many Mats the last whole frame made.
+     */
+    public synchronized int getLastFrameAllocations() {
+        return lastFrameAllocations;
+    }
+
+    /**
+     * @return The average number of Mats made per frame since this was created, including the
+     *         first frame (where the buffers get made).
+     */
+    public synchronized double getAllocationsPerFrame() {
+        return frames == 0 ? 0 : (double) totalAllocations / frames;
+    }
+
+    /**
+     * @return One line for telemetry, like "FirstVisionProcessor: 6 Mats, 57.6 KB, 0 new last frame"
+     */
+    public synchronized String summary() {
+        return String.format(Locale.US, "%s: %d Mats, %.1f KB, %d new last frame",
+                name, mats.size(), getLiveBytes() / 1024.0, lastFrameAllocations);
+    }
+
+    /**
+     * Releases every Mat that's still alive. Call it when the OpMode stops, after the camera has
+     * stopped, so no frame is using them.
+     *
+     * @return What was left, for the log: the summary, then one line per Mat that hadn't been released.
+     */
+    public synchronized String releaseAll() {
+        StringBuilder report = new StringBuilder(summary());
+        report.append(String.format(Locale.US, ", %.2f per frame over %d frames", getAllocationsPerFrame(), frames));
+        // Submats first, since they point into their parents
+        for (int pass = 0; pass < 2; pass++) {
+            for (int i = 0; i < mats.size(); i++) {
+                if (views.get(i) == (pass == 0)) {
+                    report.append("\n  not released: ").append(labels.get(i));
+                    mats.get(i).release();
+                }
+            }
+        }
+        mats.clear();
+        labels.clear();
+        views.clear();
+        return report.toString();
+    }
+}
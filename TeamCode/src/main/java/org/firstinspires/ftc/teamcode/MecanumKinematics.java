@@ -0,0 +1,59 @@
+package org.firstinspires.ftc.teamcode;
+
+/**
+ * The field-centric mecanum math from CenterStageTeleOp, kept free of the FTC SDK so it can be
+ * benchmarked on a laptop (see the Benchmarks module). Nothing here allocates; results go into
+ * arrays the caller passes in.
+ */
+public class MecanumKinematics {
+
+    // Indexes into the wheel power array
+    public static final int LEFT_FRONT = 0;
+    public static final int RIGHT_FRONT = 1;
+    public static final int LEFT_BACK = 2;
+    public static final int RIGHT_BACK = 3;
+
+    /**
+     * Rotates the joystick request by the robot heading so "forward" on the stick is always away
+     * from the driver.
+     *
+     * @param x              Strafe request (right +ve)
+     * @param y              Forward request
+     * @param headingRadians Robot heading from the IMU
+     * @param out            Gets {rotX, rotY}
+     */
+    public static void fieldCentric(double x, double y, double headingRadians, double[] out) {
+        double cos = Math.cos(headingRadians);
+        double sin = Math.sin(headingRadians);
+        out[0] = x * cos + y * sin;
+        out[1] = -x * sin + y * cos;
+    }
+
+    /**
+     * Combines the requests for each axis into wheel powers, scaled down so no wheel is over 100%
+     * (this keeps the robot moving in the requested direction).
+     *
+     * @param out Gets the four powers, indexed by LEFT_FRONT, RIGHT_FRONT, LEFT_BACK and RIGHT_BACK.
+     */
+    public static void wheelPowers(double forward, double strafe, double turn, double[] out) {
+        double leftFront = forward + strafe + turn;
+        double rightFront = forward - strafe - turn;
+        double leftBack = forward - strafe + turn;
+        double rightBack = forward + strafe - turn;
+
+        double max = Math.max(Math.abs(leftFront), Math.abs(rightFront));
+        max = Math.max(max, Math.abs(leftBack));
+        max = Math.max(max, Math.abs(rightBack));
+
+        if (max > 1.0) {
+            leftFront /= max;
+            rightFront /= max;
+            leftBack /= max;
+            rightBack /= max;
+        }
+        out[LEFT_FRONT] = leftFront;
+        out[RIGHT_FRONT] = rightFront;
+        out[LEFT_BACK] = leftBack;
+        out[RIGHT_BACK] = rightBack;
+    }
+}
@@ -0,0 +1,119 @@
+package org.firstinspires.ftc.teamcode;
+
+/**
+ * Decides when a drive is finished, from the position error and the wheel speeds, instead of
+ * waiting for every motor's isBusy() to clear. isBusy() can be wrong right after a mode switch,
+ * and if one wheel drags, the robot can sit a few ticks from the target for a long time while
+ * that motor hunts for it.
+ *
+ * Call update() once per cycle. It returns:
+ *  - ARRIVED once the robot is within the position tolerance and the wheels have (almost)
+ *    stopped, for a few cycles in a row.
+ *  - STALLED if the robot is still far from the target but the wheels haven't moved for
+ *    stallSeconds, like when it's pushing against a wall or another robot.
+ *  - TIMED_OUT if it's taken longer than the timeout passed to start().
+ *  - MOVING otherwise.
+ *
+ * The units are up to the caller (ticks or inches), as long as the position and speed match.
+ * Pure Java, so it can run on a laptop.
+ */
+public class MotionCompletion {
+
+    public static final int MOVING = 0;
+    public static final int ARRIVED = 1;
+    public static final int STALLED = 2;
+    public static final int TIMED_OUT = 3;
+
+    public static final String[] NAMES = {"Moving", "Arrived", "Stalled", "Timed out"};
+
+    private final double positionTolerance;
+    private final double velocityTolerance;
+    private final int settleCycles;
+    private final double stallVelocity;
+    private final double stallSeconds;
+
+    private double timeoutSeconds;
+    private int settledCount = 0;
+    private double stoppedSince = -1;
+    private int result = MOVING;
+
+    /**
+     * @param positionTolerance How close counts as there.
+     * @param velocityTolerance How slow the wheels have to be going to count as stopped at the target, per second.
+     * @param settleCycles      How many updates in a row both have to hold.
+     * @param stallVelocity     Wheels slower than this while away from the target count as not moving, per second.
+     * @param stallSeconds      How long they can not move before it's a stall.
+     */
+    public MotionCompletion(double positionTolerance, double velocityTolerance, int settleCycles,
+                            double stallVelocity, double stallSeconds) {
+        this.positionTolerance = positionTolerance;
+        this.velocityTolerance = velocityTolerance;
+        this.settleCycles = settleCycles;
+        this.stallVelocity = stallVelocity;
+        this.stallSeconds = stallSeconds;
+    }
+
+    /**
+     * Start watching a new move.
+     *
+     * @param timeoutSeconds Give up after this long.
+     */
+    public void start(double timeoutSeconds) {
+        this.timeoutSeconds = timeoutSeconds;
+        settledCount = 0;
+        stoppedSince = -1;
+        result = MOVING;
+    }
+
+    /**
+     * @param t             Seconds since start().
+     * @param positionError How far from the target the robot is.
+     * @param speed         How fast the wheels are going, e.g. the average of their absolute velocities.
+     * @return MOVING, ARRIVED, STALLED or TIMED_OUT.
+     */
+    public int update(double t, double positionError, double speed) {
+        double error = Math.abs(positionError);
+        speed = Math.abs(speed);
+
+        if (error < positionTolerance && speed < velocityTolerance) {
+            settledCount++;
+        } else {
+            settledCount = 0;
+        }
+
+        if (error >= positionTolerance && speed < stallVelocity) {
+            if (stoppedSince < 0) stoppedSince = t;
+        } else {
+            stoppedSince = -1;
+        }
+
+        if (settledCount >= settleCycles) {
+            result = ARRIVED;
+        } else if (stoppedSince >= 0 && t - stoppedSince >= stallSeconds) {
+            result = STALLED;
+        } else if (t >= timeoutSeconds) {
+            result = TIMED_OUT;
+        } else {
+            result = MOVING;
+        }
+        return result;
+    }
+
+    /**
+     * @return What the last update() returned.
+     */
+    public int getResult() {
+        return result;
+    }
+
+    public boolean isDone() {
+        return result != MOVING;
+    }
+
+    /**
+     * @return The average of the absolute values of four wheel velocities.
+     */
+    public static double averageSpeed(double leftFront, double leftBack, double rightFront, double rightBack) {
+        return (Math.abs(leftFront) + Math.abs(leftBack) + Math.abs(rightFront) + Math.abs(rightBack)) / 4;
+    }
+}
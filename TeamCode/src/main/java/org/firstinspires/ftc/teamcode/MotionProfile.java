@@ -0,0 +1,156 @@
+package org.firstinspires.ftc.teamcode;
+
+/**
+ * A jerk-limited ("S-curve") motion profile for a straight move: where the robot should be, how
+ * fast it should be going and how hard it should be accelerating at any time during the move.
+ *
+ * The move is split into 7 pieces: jerk up, constant acceleration, jerk down, cruise, and the
+ * same three again to slow down. Short moves skip the cruise (and maybe the constant acceleration)
+ * because they never reach full speed. With maxJerk = 0 (or infinite) you get a plain
+ * trapezoid: the acceleration switches on and off instantly.
+ *
+ * Units are up to you, as long as they match (we use encoder ticks and seconds).
+ * Pure Java, so it can be benchmarked and checked on a laptop.
+ */
+public class MotionProfile {
+
+    private static final int SEGMENTS = 7;
+
+    private final double distance;
+    private final double direction;
+
+    // Each segment starts at startTime with (position, velocity, acceleration) and has a constant jerk
+    private final double[] startTime = new double[SEGMENTS + 1];
+    private final double[] startPosition = new double[SEGMENTS + 1];
+    private final double[] startVelocity = new double[SEGMENTS + 1];
+    private final double[] startAcceleration = new double[SEGMENTS];
+    private final double[] jerk = new double[SEGMENTS];
+
+    /**
+     * @param distance        How far to move. Can be negative.
+     * @param maxVelocity     Top speed (positive).
+     * @param maxAcceleration Maximum acceleration and deceleration (positive).
+     * @param maxJerk         Maximum jerk (positive), or 0 for a trapezoidal profile.
+     */
+    public MotionProfile(double distance, double maxVelocity, double maxAcceleration, double maxJerk) {
+        this.distance = distance;
+        direction = distance < 0 ? -1 : 1;
+        double length = Math.abs(distance);
+        boolean trapezoid = maxJerk <= 0 || Double.isInfinite(maxJerk);
+
+        // Find the peak velocity: maxVelocity if there's room to get there and back, otherwise
+        // whatever speed uses up exactly half the distance speeding up.
+        double peakVelocity = maxVelocity;
+        if (2 * rampDistance(peakVelocity, maxAcceleration, maxJerk, trapezoid) > length) {
+            double low = 0;
+            double high = maxVelocity;
+            for (int i = 0; i < 50; i++) {
+                double middle = (low + high) / 2;
+                if (2 * rampDistance(middle, maxAcceleration, maxJerk, trapezoid) > length) {
+                    high = middle;
+                } else {
+                    low = middle;
+                }
+            }
+            peakVelocity = low;
+        }
+
+        // Times for the jerk pieces (tj) and the constant acceleration piece (ta) of each ramp
+        double peakAcceleration;
+        double tj;
+        double ta;
+        if (trapezoid) {
+            peakAcceleration = maxAcceleration;
+            tj = 0;
+            ta = peakVelocity / maxAcceleration;
+        } else if (peakVelocity >= maxAcceleration * maxAcceleration / maxJerk) {
+            peakAcceleration = maxAcceleration;
+            tj = maxAcceleration / maxJerk;
+            ta = peakVelocity / maxAcceleration - tj;
+        } else {
+            // Never reaches maxAcceleration
+            tj = Math.sqrt(peakVelocity / maxJerk);
+            peakAcceleration = maxJerk * tj;
+            ta = 0;
+        }
+        double cruise = peakVelocity > 0
+                ? (length - 2 * rampDistance(peakVelocity, maxAcceleration, maxJerk, trapezoid)) / peakVelocity
+                : 0;
+        double j = trapezoid ? 0 : maxJerk;
+
+        double[] durations = {tj, ta, tj, Math.max(0, cruise), tj, ta, tj};
+        double[] accelerations = {0, peakAcceleration, peakAcceleration, 0, 0, -peakAcceleration, -peakAcceleration};
+        double[] jerks = {j, 0, -j, 0, -j, 0, j};
+
+        for (int i = 0; i < SEGMENTS; i++) {
+            double t = durations[i];
+            double a = accelerations[i];
+            startAcceleration[i] = a;
+            jerk[i] = jerks[i];
+            startTime[i + 1] = startTime[i] + t;
+            startVelocity[i + 1] = startVelocity[i] + a * t + jerks[i] * t * t / 2;
+            startPosition[i + 1] = startPosition[i] + startVelocity[i] * t + a * t * t / 2 + jerks[i] * t * t * t / 6;
+        }
+    }
+
+    /**
+     * @return How far you go while speeding up from 0 to velocity.
+     */
+    private static double rampDistance(double velocity, double maxAcceleration, double maxJerk, boolean trapezoid) {
+        // The ramp is symmetric, so the average speed is half of velocity
+        double time;
+        if (trapezoid) {
+            time = velocity / maxAcceleration;
+        } else if (velocity >= maxAcceleration * maxAcceleration / maxJerk) {
+            time = velocity / maxAcceleration + maxAcceleration / maxJerk;
+        } else {
+            time = 2 * Math.sqrt(velocity / maxJerk);
+        }
+        return velocity * time / 2;
+    }
+
+    private int segmentAt(double t) {
+        int segment = 0;
+        while (segment < SEGMENTS - 1 && t >= startTime[segment + 1]) {
+            segment++;
+        }
+        return segment;
+    }
+
+    /**
+     * @return How long the whole move takes, in seconds.
+     */
+    public double getDuration() {
+        return startTime[SEGMENTS];
+    }
+
+    public double getDistance() {
+        return distance;
+    }
+
+    /**
+     * @return Where the robot should be t seconds into the move (0 before it starts, distance after it ends).
+     */
+    public double getPosition(double t) {
+        if (t <= 0) return 0;
+        if (t >= getDuration()) return distance;
+        int i = segmentAt(t);
+        double dt = t - startTime[i];
+        return direction * (startPosition[i] + startVelocity[i] * dt
+                + startAcceleration[i] * dt * dt / 2 + jerk[i] * dt * dt * dt / 6);
+    }
+
+    public double getVelocity(double t) {
+        if (t <= 0 || t >= getDuration()) return 0;
+        int i = segmentAt(t);
+        double dt = t - startTime[i];
+        return direction * (startVelocity[i] + startAcceleration[i] * dt + jerk[i] * dt * dt / 2);
+    }
+
+    public double getAcceleration(double t) {
+        if (t <= 0 || t >= getDuration()) return 0;
+        int i = segmentAt(t);
+        double dt = t - startTime[i];
+        return direction * (startAcceleration[i] + jerk[i] * dt);
+    }
+}
@@ -0,0 +1,24 @@
+package org.firstinspires.ftc.teamcode;
+
+/**
+ * Where the driving loops get the time from. On the robot that's System.nanoTime(). In a
+ * simulation it's the SimRobot's simulated time, so a whole autonomous runs as fast as the laptop
+ * can step it, and every run comes out the same.
+ *
+ * Anything that goes by RobotState.timestampNanos (the loops, Commands, MotionCompletion) runs on
+ * this clock. Pure Java, so it can run on a laptop.
+ */
+public interface NanoClock {
+
+    NanoClock SYSTEM = new NanoClock() {
+        @Override
+        public long nanoTime() {
+            return System.nanoTime();
+        }
+    };
+
+    /**
+     * @return The time in nanoseconds, from some fixed but arbitrary start (like System.nanoTime()).
+     */
+    long nanoTime();
+}
@@ -0,0 +1,125 @@
+package org.firstinspires.ftc.teamcode;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A list of driving steps for CenterStageAutonomous.followPath(). Build it the same way you'd
+ * write a chain of driveStraight()/turnToHeading() calls:
+ *
+ *   Path path = new Path()
+ *           .drive(DRIVE_SPEED, -14, 0, notMirrored)
+ *           .turn(TURN_SPEED, 45, notMirrored)
+ *           .drive(0.5, -9.5, 0, notMirrored);
+ *   followPath(path);
+ *
+ * The difference is that followPath() sees the whole list, so it doesn't have to stop the robot
+ * between steps. Add a pause() where the robot really needs to stop.
+ *
+ * To do the planning ahead of time, compile it into a CompiledRoute (see CenterStageAutonomous.compileRoute()).
+ */
+public class Path {
+
+    public static final int DRIVE = 0;
+    public static final int TURN = 1;
+    public static final int PAUSE = 2;
+    public static final int DELIVER = 3;
+    public static final int MOVE = 4;
+    public static final int WAIT = 5;
+
+    public static class Segment {
+        public final int type;
+        public final double speed;         // maxDriveSpeed or maxTurnSpeed, like driveStraight()/turnToHeading()
+        public final double distance;      // inches, DRIVE only
+        public final double heading;       // degrees, before mirroring
+        public final boolean isMirrored;
+        public final long pauseMs;         // PAUSE and WAIT only
+        public final double dx;            // MOVE only: inches along the field, before mirroring
+        public final double dy;
+
+        Segment(int type, double speed, double distance, double heading, boolean isMirrored, long pauseMs) {
+            this(type, speed, distance, heading, isMirrored, pauseMs, 0, 0);
+        }
+
+        Segment(int type, double speed, double distance, double heading, boolean isMirrored, long pauseMs,
+                double dx, double dy) {
+            this.type = type;
+            this.speed = speed;
+            this.distance = distance;
+            this.heading = heading;
+            this.isMirrored = isMirrored;
+            this.pauseMs = pauseMs;
+            this.dx = dx;
+            this.dy = dy;
+        }
+    }
+
+    private final List<Segment> segments = new ArrayList<>();
+
+    /**
+     * Same arguments as driveStraight().
+     */
+    public Path drive(double maxDriveSpeed, double distance, double heading, boolean isMirrored) {
+        segments.add(new Segment(DRIVE, maxDriveSpeed, distance, heading, isMirrored, 0));
+        return this;
+    }
+
+    /**
+     * Same arguments as turnToHeading().
+     */
+    public Path turn(double maxTurnSpeed, double heading, boolean isMirrored) {
+        segments.add(new Segment(TURN, maxTurnSpeed, 0, heading, isMirrored, 0));
+        return this;
+    }
+
+    /**
+     * Move sideways, diagonally and/or turn all at once using the mecanum wheels (see HolonomicController),
+     * instead of turning, driving and turning back.
+     *
+     * @param maxSpeed Fraction (0 to 1) of the top speed for moves (MOVE_MAX_VELOCITY).
+     * @param dx       Inches to move along the field's x axis (forward from where the robot started).
+     * @param dy       Inches to move along the field's y axis (to the left of where the robot started).
+     *                 Mirroring flips dy along with the heading.
+     * @param heading  Heading to end up at, in degrees, like turnToHeading().
+     */
+    public Path move(double maxSpeed, double dx, double dy, double heading, boolean isMirrored) {
+        segments.add(new Segment(MOVE, maxSpeed, 0, heading, isMirrored, 0, dx, dy));
+        return this;
+    }
+
+    /**
+     * Come to a full stop and wait. Use 0 to just stop.
+     */
+    public Path pause(long milliseconds) {
+        segments.add(new Segment(PAUSE, 0, 0, 0, false, milliseconds));
+        return this;
+    }
+
+    /**
+     * Stop and wait for our alliance partner to get out of the way (the "Stall" init menu choice).
+     * Like pause(), except that it gets shortened if the rest of the route wouldn't fit in the
+     * time left (see TaskPlanner).
+     *
+     * @param milliseconds The longest it should wait.
+     */
+    public Path stallWait(long milliseconds) {
+        segments.add(new Segment(WAIT, 0, 0, 0, false, milliseconds));
+        return this;
+    }
+
+    /**
+     * Stop and deliver the pixel on the backdrop (see CenterStageAutonomous.deliverPixel()).
+     */
+    public Path deliver() {
+        segments.add(new Segment(DELIVER, 0, 0, 0, false, 0));
+        return this;
+    }
+
+    public List<Segment> getSegments() {
+        return segments;
+    }
+
+    public int size() {
+        return segments.size();
+    }
+}
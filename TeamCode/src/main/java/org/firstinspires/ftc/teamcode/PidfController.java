@@ -0,0 +1,167 @@
+package org.firstinspires.ftc.teamcode;
+
+/**
+ * A PIDF controller for holding or turning to a heading. Pure Java, so it can run on a laptop.
+ *
+ * On top of a plain PID it has:
+ *  - Derivative on measurement: the D term uses the IMU's yaw rate instead of how fast the error
+ *    changes, so it doesn't kick when the target heading jumps, and isn't noisy like a difference
+ *    of two yaw readings.
+ *  - Integral clamping: the integral only builds up when the error is small (inside the integral
+ *    zone), and the I term can never be more than integralLimit. That stops it winding up during
+ *    a big turn and overshooting at the end.
+ *  - Gain scheduling: kP is scaled by how big the error is, so it can push harder near the target
+ *    (where a plain P controller crawls) without slamming the robot around on big errors.
+ *  - kF: a fixed push in the direction of the error, enough to get the wheels past static friction.
+ *  - Settling: isSettled() only turns true once the error AND the turn rate have both been small
+ *    for several cycles in a row, so a turn doesn't end while the robot is still swinging through.
+ *
+ * Errors are in degrees (target - current) and rates in degrees per second, CCW positive like the IMU.
+ */
+public class PidfController {
+
+    private final double kP;
+    private final double kI;
+    private final double kD;
+    private final double kF;
+
+    private double integralLimit = 1.0;     // largest the I term can get, in power
+    private double integralZone = Double.POSITIVE_INFINITY;     // degrees
+    private double outputLimit = 1.0;
+
+    // kP is multiplied by a scale interpolated from this table, by |error|
+    private double[] scheduleErrors = {0};
+    private double[] scheduleScales = {1};
+
+    private double settleError = 1.0;       // degrees
+    private double settleRate = 10.0;       // degrees per second
+    private int settleCycles = 1;
+
+    private double integral = 0;            // degree-seconds
+    private int settledCount = 0;
+
+    public PidfController(double kP, double kI, double kD, double kF) {
+        this.kP = kP;
+        this.kI = kI;
+        this.kD = kD;
+        this.kF = kF;
+    }
+
+    /**
+     * @param limit Largest the I term is allowed to get, in power.
+     * @param zone  The integral only builds up while |error| is under this many degrees, and is cleared outside it.
+     */
+    public PidfController setIntegralLimits(double limit, double zone) {
+        integralLimit = limit;
+        integralZone = zone;
+        return this;
+    }
+
+    public PidfController setOutputLimit(double limit) {
+        outputLimit = limit;
+        return this;
+    }
+
+    /**
+     * Scale kP by error size. Between the listed errors the scale is interpolated, and past the
+     * ends it stays at the end values.
+     *
+     * @param errors Degrees, smallest first.
+     * @param scales What to multiply kP by at each of those errors.
+     */
+    public PidfController setGainSchedule(double[] errors, double[] scales) {
+        if (errors.length == 0 || errors.length != scales.length) {
+            throw new IllegalArgumentException("gain schedule needs the same number of errors and scales");
+        }
+        scheduleErrors = errors.clone();
+        scheduleScales = scales.clone();
+        return this;
+    }
+
+    /**
+     * @param error  Degrees. Also where kF stops pushing.
+     * @param rate   Degrees per second.
+     * @param cycles How many updates in a row both have to be inside these for isSettled().
+     */
+    public PidfController setSettleTolerance(double error, double rate, int cycles) {
+        settleError = error;
+        settleRate = rate;
+        settleCycles = cycles;
+        return this;
+    }
+
+    /**
+     * Clears the integral and the settle count. Call it when starting on a new target.
+     */
+    public void reset() {
+        integral = 0;
+        settledCount = 0;
+    }
+
+    /**
+     * Run once per cycle.
+     *
+     * @param error Target - current heading, degrees, normalized to +/- 180.
+     * @param rate  Yaw rate from the IMU, degrees per second.
+     * @param dt    Seconds since the last update(). Use 0 on the first one.
+     * @return The turn power, limited to +/- the output limit.
+     */
+    public double update(double error, double rate, double dt) {
+        if (Math.abs(error) < integralZone) {
+            integral += error * dt;
+            if (kI != 0) {
+                double maxIntegral = integralLimit / Math.abs(kI);
+                integral = DriveControl.clip(integral, -maxIntegral, maxIntegral);
+            }
+        } else {
+            integral = 0;
+        }
+
+        if (Math.abs(error) < settleError && Math.abs(rate) < settleRate) {
+            settledCount++;
+        } else {
+            settledCount = 0;
+        }
+
+        return calculate(error, rate, integral);
+    }
+
+    /**
+     * The output for a given error, rate and integral, without changing anything.
+     * update() uses it.
+     */
+    public double calculate(double error, double rate, double integral) {
+        double p = kP * scheduledScale(Math.abs(error)) * error;
+        double i = kI * integral;
+        // The error goes down as the heading goes up (for a fixed target), so its derivative is -rate
+        double d = -kD * rate;
+        double f = Math.abs(error) > settleError ? kF * Math.signum(error) : 0;
+        return DriveControl.clip(p + i + d + f, -outputLimit, outputLimit);
+    }
+
+    private double scheduledScale(double error) {
+        int last = scheduleErrors.length - 1;
+        if (error <= scheduleErrors[0]) return scheduleScales[0];
+        if (error >= scheduleErrors[last]) return scheduleScales[last];
+
+        int i = 1;
+        while (scheduleErrors[i] < error) i++;
+        double fraction = (error - scheduleErrors[i - 1]) / (scheduleErrors[i] - scheduleErrors[i - 1]);
+        return scheduleScales[i - 1] + fraction * (scheduleScales[i] - scheduleScales[i - 1]);
+    }
+
+    /**
+     * @return True once the error and rate have been inside the settle tolerance for enough cycles in a row.
+     */
+    public boolean isSettled() {
+        return settledCount >= settleCycles;
+    }
+
+    public double getIntegral() {
+        return integral;
+    }
+
+    public double getKP() {
+        return kP;
+    }
+}
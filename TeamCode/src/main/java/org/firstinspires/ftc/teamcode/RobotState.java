@@ -0,0 +1,153 @@
+package org.firstinspires.ftc.teamcode;
+
+import com.qualcomm.hardware.lynx.LynxModule;
+import com.qualcomm.robotcore.hardware.VoltageSensor;
+
+import java.util.List;
+
+/**
+ * Everything the robot knows about itself at the start of one loop cycle.
+ * It's read all at once right after the bulk cache is cleared, so every subsystem sees the same
+ * values during a cycle, and nobody goes back to the hardware for a second read.
+ * Once built it never changes; the next cycle gets a new one.
+ */
+public class RobotState {
+
+    public final long timestampNanos;
+
+    // Drive encoder positions (ticks) and velocities (ticks per second)
+    public final int leftFrontPosition;
+    public final int leftBackPosition;
+    public final int rightFrontPosition;
+    public final int rightBackPosition;
+    public final double leftFrontVelocity;
+    public final double leftBackVelocity;
+    public final double rightFrontVelocity;
+    public final double rightBackVelocity;
+
+    public final int armPosition;
+    public final double armVelocity;
+    public final int suspensionPosition;
+
+    // IMU yaw in degrees, straight from the IMU (no heading offset applied), and yaw rate in degrees per second
+    public final double yaw;
+    public final double yawRate;
+    // True if the IMU sampler hasn't had a new reading for a while, so yaw and yawRate are old
+    public final boolean imuStale;
+
+    public final double batteryVoltage;
+
+    public RobotState(long timestampNanos,
+                      int leftFrontPosition, int leftBackPosition, int rightFrontPosition, int rightBackPosition,
+                      double leftFrontVelocity, double leftBackVelocity, double rightFrontVelocity, double rightBackVelocity,
+                      int armPosition, double armVelocity, int suspensionPosition,
+                      double yaw, double yawRate, boolean imuStale, double batteryVoltage) {
+        this.timestampNanos = timestampNanos;
+        this.leftFrontPosition = leftFrontPosition;
+        this.leftBackPosition = leftBackPosition;
+        this.rightFrontPosition = rightFrontPosition;
+        this.rightBackPosition = rightBackPosition;
+        this.leftFrontVelocity = leftFrontVelocity;
+        this.leftBackVelocity = leftBackVelocity;
+        this.rightFrontVelocity = rightFrontVelocity;
+        this.rightBackVelocity = rightBackVelocity;
+        this.armPosition = armPosition;
+        this.armVelocity = armVelocity;
+        this.suspensionPosition = suspensionPosition;
+        this.yaw = yaw;
+        this.yawRate = yawRate;
+        this.imuStale = imuStale;
+        this.batteryVoltage = batteryVoltage;
+    }
+
+    /**
+     * Builds a RobotState once per cycle from the hardware.
+     * The arm and suspension motors are picked up from SwingArm and Suspension if they have been created.
+     * The IMU values are the latest ones from the ImuSampler thread, so reading them never blocks.
+     * The IMU is never read here: if the sample is older than STALE_IMU_MS (the thread hit a
+     * string of bad reads, or died), the old sample is used, the state is marked imuStale, and
+     * the sampler gets restarted if its thread has died.
+     * Any of the drive motors, the IMU sampler or the battery may be null if an OpMode doesn't use them.
+     * The battery voltage isn't part of the bulk read, so it costs a hub transaction of its own; it
+     * changes slowly, so it's only read every VOLTAGE_READ_INTERVAL cycles.
+     * The timestamps come from a NanoClock, so in a simulation they're simulated time.
+     */
+    public static class Reader {
+        static final int VOLTAGE_READ_INTERVAL = 10;
+        // The sampler normally has a new sample every few ms, so this is several missed reads
+        static final double STALE_IMU_MS = 50;
+
+        private final List<LynxModule> allHubs;
+        private final CachingMotor leftFront;
+        private final CachingMotor leftBack;
+        private final CachingMotor rightFront;
+        private final CachingMotor rightBack;
+        private final ImuSampler imuSampler;
+        private final VoltageSensor battery;
+        private final NanoClock clock;
+        private double batteryVoltage = 0;
+        private int cyclesSinceVoltageRead = VOLTAGE_READ_INTERVAL;
+
+        public Reader(List<LynxModule> allHubs,
+                      CachingMotor leftFront, CachingMotor leftBack, CachingMotor rightFront, CachingMotor rightBack,
+                      ImuSampler imuSampler, VoltageSensor battery) {
+            this(allHubs, leftFront, leftBack, rightFront, rightBack, imuSampler, battery, NanoClock.SYSTEM);
+        }
+
+        public Reader(List<LynxModule> allHubs,
+                      CachingMotor leftFront, CachingMotor leftBack, CachingMotor rightFront, CachingMotor rightBack,
+                      ImuSampler imuSampler, VoltageSensor battery, NanoClock clock) {
+            this.allHubs = allHubs;
+            this.leftFront = leftFront;
+            this.leftBack = leftBack;
+            this.rightFront = rightFront;
+            this.rightBack = rightBack;
+            this.imuSampler = imuSampler;
+            this.battery = battery;
+            this.clock = clock;
+        }
+
+        /**
+         * Clears the bulk cache and reads a fresh state. Call this exactly once per cycle.
+         */
+        public RobotState read() {
+            // Clears the cache so that the first encoder read below does one bulk read per hub
+            for (LynxModule hub : allHubs) {
+                hub.clearBulkCache();
+            }
+
+            ImuSampler.Sample imu = imuSampler == null ? null : imuSampler.getLatest();
+            boolean imuStale = false;
+            if (imu != null && imu.ageMs(clock.nanoTime()) > STALE_IMU_MS) {
+                imuStale = true;
+                imuSampler.restartIfDead();
+            }
+
+            if (battery != null && ++cyclesSinceVoltageRead >= VOLTAGE_READ_INTERVAL) {
+                batteryVoltage = battery.getVoltage();
+                cyclesSinceVoltageRead = 0;
+            }
+
+            return new RobotState(clock.nanoTime(),
+                    position(leftFront), position(leftBack),
+                    position(rightFront), position(rightBack),
+                    velocity(leftFront), velocity(leftBack),
+                    velocity(rightFront), velocity(rightBack),
+                    position(SwingArm.armMotor), velocity(SwingArm.armMotor),
+                    position(Suspension.susMotor),
+                    imu == null ? 0 : imu.yaw,
+                    imu == null ? 0 : imu.yawRate,
+                    imuStale,
+                    batteryVoltage);
+        }
+
+        // Test OpModes don't have every motor, so a missing motor just reads as zero.
+        private static int position(CachingMotor motor) {
+            return motor == null ? 0 : motor.getCurrentPosition();
+        }
+
+        private static double velocity(CachingMotor motor) {
+            return motor == null ? 0 : motor.getVelocity();
+        }
+    }
+}
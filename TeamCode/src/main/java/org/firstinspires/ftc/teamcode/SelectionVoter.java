@@ -0,0 +1,110 @@
+package org.firstinspires.ftc.teamcode;
+
+import java.util.Arrays;
+
+/**
+ * Decides where the team prop is from the last few frames instead of just the last one, so one
+ * noisy frame (someone walking past, the camera auto-exposing) can't send the robot to the wrong
+ * spike mark.
+ *
+ * Every frame adds its pick and a margin: how much more saturated the winning rectangle was than
+ * the next one. Frames with a small margin were nearly a tie, so they don't get a vote. Once one
+ * side has LOCK_VOTES of the last WINDOW frames the decision is locked, and the autonomous can go
+ * as soon as it starts. If the prop moves during init, the other side builds up its own majority
+ * and takes over.
+ *
+ * freeze() fixes the decision when the match starts, so it can't change mid-route. The vision
+ * thread adds frames and the OpMode thread reads the decision, so the methods are synchronized.
+ * Pure Java, so it can run on a laptop.
+ */
+public class SelectionVoter {
+
+    static final int WINDOW = 15;            // frames, about half a second at 30 fps
+    static final int LOCK_VOTES = 11;        // how many of them have to agree
+    static final double MIN_MARGIN = 10;     // saturation; the prop is usually 100+ above the mat
+
+    private final int[] picks = new int[WINDOW];
+    private final double[] margins = new double[WINDOW];
+    private final int[] votes = new int[4];   // by side; NONE never gets any
+    private int next = 0;
+    private int count = 0;
+
+    private int decision = SpikeMarkDetector.NONE;
+    private boolean locked = false;
+    private boolean frozen = false;
+
+    /**
+     * @param pick   SpikeMarkDetector.NONE, LEFT, MIDDLE or RIGHT for this frame
+     * @param margin The winning saturation minus the runner up (see SpikeMarkDetector.margin())
+     */
+    public synchronized void add(int pick, double margin) {
+        if (frozen) return;
+        picks[next] = pick;
+        margins[next] = margin;
+        next = (next + 1) % WINDOW;
+        if (count < WINDOW) count++;
+        decide();
+    }
+
+    private void decide() {
+        Arrays.fill(votes, 0);
+        for (int i = 0; i < count; i++) {
+            if (picks[i] != SpikeMarkDetector.NONE && margins[i] >= MIN_MARGIN) {
+                votes[picks[i]]++;
+            }
+        }
+        int best = SpikeMarkDetector.NONE;
+        for (int side = SpikeMarkDetector.LEFT; side <= SpikeMarkDetector.RIGHT; side++) {
+            if (votes[side] > votes[best]) best = side;
+        }
+
+        if (best != SpikeMarkDetector.NONE && votes[best] >= LOCK_VOTES) {
+            decision = best;
+            locked = true;
+        } else if (!locked) {
+            // Nothing's sure yet, so go with whatever has the most votes
+            decision = best;
+        }
+        // A locked decision only changes when another side gets a majority of its own
+    }
+
+    /**
+     * @return The side to go to: the locked one if there is one, otherwise the one with the most
+     *         votes so far, or NONE if no frame was confident.
+     */
+    public synchronized int getDecision() {
+        return decision;
+    }
+
+    public synchronized boolean isLocked() {
+        return locked;
+    }
+
+    /**
+     * @return How many of the frames in the window voted for the decision.
+     */
+    public synchronized int getVotes() {
+        return decision == SpikeMarkDetector.NONE ? 0 : votes[decision];
+    }
+
+    /**
+     * Stop taking frames, so the decision stays the same for the rest of the match.
+     *
+     * @return The decision.
+     */
+    public synchronized int freeze() {
+        frozen = true;
+        return decision;
+    }
+
+    /**
+     * Forget every frame, like for a new match.
+     */
+    public synchronized void reset() {
+        next = 0;
+        count = 0;
+        decision = SpikeMarkDetector.NONE;
+        locked = false;
+        frozen = false;
+    }
+}
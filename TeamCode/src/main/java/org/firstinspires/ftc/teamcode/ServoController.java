@@ -4,16 +4,43 @@ import com.qualcomm.robotcore.hardware.HardwareMap;
 import com.qualcomm.robotcore.hardware.Servo;
 
 public class ServoController {
+    // Total number of servo writes skipped by all the servos, for telemetry. Static, so it outlives the
+    // OpMode: call resetTotalWritesSaved() when one starts.
+    private static long totalWritesSaved = 0;
+
     private Servo servo;
 
+    // The last position we sent. Every write is a USB transaction, so we don't send the same one twice.
+    private double lastPosition = Double.NaN;
+    private long writesSaved = 0;
+
     public void init(HardwareMap hwMap, String deviceName) {
         servo = hwMap.get(Servo.class, deviceName);
+        lastPosition = Double.NaN;
     }
     public void setServoPosition(double position){
+        if (position == lastPosition) {
+            writesSaved++;
+            totalWritesSaved++;
+            return;
+        }
         servo.setPosition(position);
+        lastPosition = position;
     }
     public double getServoPosition() {
-        return servo.getPosition();
+        return Double.isNaN(lastPosition) ? servo.getPosition() : lastPosition;
+    }
+
+    public long getWritesSaved() {
+        return writesSaved;
+    }
+
+    public static long getTotalWritesSaved() {
+        return totalWritesSaved;
+    }
+
+    public static void resetTotalWritesSaved() {
+        totalWritesSaved = 0;
     }
 
-}
\ No newline at end of file
+}
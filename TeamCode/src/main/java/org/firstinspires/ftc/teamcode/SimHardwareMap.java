@@ -0,0 +1,37 @@
+package org.firstinspires.ftc.teamcode;
+
+import com.qualcomm.robotcore.hardware.HardwareMap;
+
+/**
+ * Builds a HardwareMap full of simulated devices (see SimRobot), using the same names as our
+ * robot configuration, so OpMode and subsystem code can run unchanged on a laptop.
+ *
+ * There are no LynxModules in it: getAll(LynxModule.class) returns an empty list, so bulk
+ * caching is simply skipped. There's no webcam either, so anything that opens a VisionPortal
+ * has to be given its prop selection some other way (like CenterStageAutonomous.simulate()).
+ */
+public class SimHardwareMap {
+
+    public static HardwareMap create(SimRobot robot) {
+        HardwareMap hardwareMap = new HardwareMap(null, null);
+
+        hardwareMap.put("left_driveF", robot.leftFront);
+        hardwareMap.put("left_driveB", robot.leftBack);
+        hardwareMap.put("right_driveF", robot.rightFront);
+        hardwareMap.put("right_driveB", robot.rightBack);
+        hardwareMap.put("arm", robot.arm);
+        hardwareMap.put("suspension", robot.suspension);
+        hardwareMap.put("intake", robot.intake);
+
+        hardwareMap.put("imu", robot.imu);
+
+        hardwareMap.put("bucketServo", robot.bucketServo);
+        hardwareMap.put("doorServo", robot.doorServo);
+        hardwareMap.put("droneLauncherServo", robot.droneLauncherServo);
+
+        hardwareMap.put("Control Hub", robot.battery);
+        hardwareMap.voltageSensor.put("Control Hub", robot.battery);
+
+        return hardwareMap;
+    }
+}
@@ -0,0 +1,91 @@
+package org.firstinspires.ftc.teamcode;
+
+import com.qualcomm.robotcore.hardware.IMU;
+
+import org.firstinspires.ftc.robotcore.external.navigation.AngleUnit;
+import org.firstinspires.ftc.robotcore.external.navigation.AngularVelocity;
+import org.firstinspires.ftc.robotcore.external.navigation.AxesOrder;
+import org.firstinspires.ftc.robotcore.external.navigation.AxesReference;
+import org.firstinspires.ftc.robotcore.external.navigation.Orientation;
+import org.firstinspires.ftc.robotcore.external.navigation.Quaternion;
+import org.firstinspires.ftc.robotcore.external.navigation.YawPitchRollAngles;
+
+/**
+ * A pretend IMU that reports the heading of the simulated robot (see SimRobot).
+ * The robot only turns flat on the field, so pitch and roll are always 0.
+ */
+public class SimImu implements IMU {
+
+    private final SimRobot robot;
+    private double yawOffset = 0;   // degrees, set by resetYaw()
+
+    public SimImu(SimRobot robot) {
+        this.robot = robot;
+    }
+
+    private double yawDegrees() {
+        return DriveControl.normalizeDegrees(Math.toDegrees(robot.getHeading()) - yawOffset);
+    }
+
+    @Override
+    public boolean initialize(Parameters parameters) {
+        return true;
+    }
+
+    @Override
+    public void resetYaw() {
+        yawOffset = Math.toDegrees(robot.getHeading());
+    }
+
+    @Override
+    public YawPitchRollAngles getRobotYawPitchRollAngles() {
+        return new YawPitchRollAngles(AngleUnit.DEGREES, yawDegrees(), 0, 0, System.nanoTime());
+    }
+
+    @Override
+    public Orientation getRobotOrientation(AxesReference reference, AxesOrder order, AngleUnit angleUnit) {
+        return new Orientation(AxesReference.INTRINSIC, AxesOrder.ZYX, AngleUnit.DEGREES,
+                (float) yawDegrees(), 0, 0, System.nanoTime())
+                .toAxesReference(reference).toAxesOrder(order).toAngleUnit(angleUnit);
+    }
+
+    @Override
+    public Quaternion getRobotOrientationAsQuaternion() {
+        double halfYaw = Math.toRadians(yawDegrees()) / 2;
+        return new Quaternion((float) Math.cos(halfYaw), 0, 0, (float) Math.sin(halfYaw), System.nanoTime());
+    }
+
+    @Override
+    public AngularVelocity getRobotAngularVelocity(AngleUnit angleUnit) {
+        float yawRate = (float) angleUnit.fromRadians(robot.getAngularVelocity());
+        return new AngularVelocity(angleUnit, 0, 0, yawRate, System.nanoTime());
+    }
+
+    @Override
+    public Manufacturer getManufacturer() {
+        return Manufacturer.Other;
+    }
+
+    @Override
+    public String getDeviceName() {
+        return "Simulated IMU";
+    }
+
+    @Override
+    public String getConnectionInfo() {
+        return "simulated";
+    }
+
+    @Override
+    public int getVersion() {
+        return 1;
+    }
+
+    @Override
+    public void resetDeviceConfigurationForOpMode() {
+    }
+
+    @Override
+    public void close() {
+    }
+}
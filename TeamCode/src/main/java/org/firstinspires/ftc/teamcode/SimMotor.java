@@ -0,0 +1,325 @@
+package org.firstinspires.ftc.teamcode;
+
+import com.qualcomm.robotcore.hardware.DcMotorController;
+import com.qualcomm.robotcore.hardware.DcMotorEx;
+import com.qualcomm.robotcore.hardware.PIDCoefficients;
+import com.qualcomm.robotcore.hardware.PIDFCoefficients;
+import com.qualcomm.robotcore.hardware.configuration.typecontainers.MotorConfigurationType;
+
+import org.firstinspires.ftc.robotcore.external.navigation.AngleUnit;
+import org.firstinspires.ftc.robotcore.external.navigation.CurrentUnit;
+
+/**
+ * A pretend motor for running our code without a robot (see SimRobot).
+ *
+ * It behaves roughly like a motor on a REV hub: the velocity follows the commanded power with a
+ * short lag, RUN_TO_POSITION uses a P controller like the hub's, and REVERSE flips both the power
+ * and the encoder. Nothing moves until SimRobot.step() is called.
+ */
+public class SimMotor implements DcMotorEx {
+
+    private final String name;
+    private final double maxTicksPerSecond;
+
+    private Direction direction = Direction.FORWARD;
+    private RunMode mode = RunMode.RUN_WITHOUT_ENCODER;
+    private ZeroPowerBehavior zeroPowerBehavior = ZeroPowerBehavior.BRAKE;
+    private double power = 0;
+    private int targetPosition = 0;
+    private int targetPositionTolerance = 10;
+    private boolean enabled = true;
+
+    // The real state of the motor shaft, before the direction is applied
+    private double rawPosition = 0;
+    private double rawVelocity = 0;
+
+    // How fast the motor gets up to speed, in seconds
+    static final double TIME_CONSTANT = 0.08;
+    static final double COAST_TIME_CONSTANT = 0.4;
+    // Same as the default position P on a REV hub: ticks per second of velocity per tick of error
+    static final double POSITION_P = 10.0;
+
+    private PIDFCoefficients velocityPidf = new PIDFCoefficients(10, 3, 0, 0);
+    private PIDFCoefficients positionPidf = new PIDFCoefficients(POSITION_P, 0, 0, 0);
+
+    /**
+     * @param name              The name it will have in the hardware map.
+     * @param maxTicksPerSecond Encoder ticks per second at full power.
+     */
+    public SimMotor(String name, double maxTicksPerSecond) {
+        this.name = name;
+        this.maxTicksPerSecond = maxTicksPerSecond;
+    }
+
+    private double sign() {
+        return direction == Direction.REVERSE ? -1 : 1;
+    }
+
+    /**
+     * Moves the motor forward in time.
+     */
+    public void step(double dt) {
+        double targetVelocity; // in the motor's own direction, like everything the user sees
+        if (!enabled || mode == RunMode.STOP_AND_RESET_ENCODER) {
+            targetVelocity = 0;
+        } else if (mode == RunMode.RUN_TO_POSITION) {
+            double limit = Math.abs(power) * maxTicksPerSecond;
+            double error = targetPosition - getCurrentPosition();
+            targetVelocity = DriveControl.clip(error * positionPidf.p, -limit, limit);
+        } else {
+            targetVelocity = power * maxTicksPerSecond;
+        }
+
+        double velocity = sign() * rawVelocity;
+        boolean coasting = targetVelocity == 0 && zeroPowerBehavior == ZeroPowerBehavior.FLOAT;
+        double tau = coasting ? COAST_TIME_CONSTANT : TIME_CONSTANT;
+        velocity += (targetVelocity - velocity) * Math.min(1.0, dt / tau);
+
+        rawVelocity = sign() * velocity;
+        rawPosition += rawVelocity * dt;
+    }
+
+    /**
+     * @return How fast the shaft is actually turning, ignoring the direction setting. Used by SimRobot.
+     */
+    public double getRawVelocity() {
+        return rawVelocity;
+    }
+
+    public double getRawPosition() {
+        return rawPosition;
+    }
+
+    @Override
+    public void setMode(RunMode mode) {
+        this.mode = mode;
+        if (mode == RunMode.STOP_AND_RESET_ENCODER) {
+            rawPosition = 0;
+            rawVelocity = 0;
+            power = 0;
+        }
+    }
+
+    @Override
+    public RunMode getMode() {
+        return mode;
+    }
+
+    @Override
+    public void setPower(double power) {
+        this.power = DriveControl.clip(power, -1, 1);
+    }
+
+    @Override
+    public double getPower() {
+        return power;
+    }
+
+    @Override
+    public void setDirection(Direction direction) {
+        this.direction = direction;
+    }
+
+    @Override
+    public Direction getDirection() {
+        return direction;
+    }
+
+    @Override
+    public void setTargetPosition(int position) {
+        targetPosition = position;
+    }
+
+    @Override
+    public int getTargetPosition() {
+        return targetPosition;
+    }
+
+    @Override
+    public boolean isBusy() {
+        return mode == RunMode.RUN_TO_POSITION
+                && Math.abs(targetPosition - getCurrentPosition()) > targetPositionTolerance;
+    }
+
+    @Override
+    public int getCurrentPosition() {
+        return (int) Math.round(sign() * rawPosition);
+    }
+
+    @Override
+    public void setZeroPowerBehavior(ZeroPowerBehavior zeroPowerBehavior) {
+        this.zeroPowerBehavior = zeroPowerBehavior;
+    }
+
+    @Override
+    public ZeroPowerBehavior getZeroPowerBehavior() {
+        return zeroPowerBehavior;
+    }
+
+    @Deprecated
+    @Override
+    public void setPowerFloat() {
+        zeroPowerBehavior = ZeroPowerBehavior.FLOAT;
+        power = 0;
+    }
+
+    @Override
+    public boolean getPowerFloat() {
+        return zeroPowerBehavior == ZeroPowerBehavior.FLOAT && power == 0;
+    }
+
+    @Override
+    public double getVelocity() {
+        return sign() * rawVelocity;
+    }
+
+    @Override
+    public double getVelocity(AngleUnit unit) {
+        // Assume 28 ticks per revolution, like the motors on our drivetrain
+        double revolutionsPerSecond = getVelocity() / 28.0;
+        return unit.fromRadians(revolutionsPerSecond * 2 * Math.PI);
+    }
+
+    @Override
+    public void setVelocity(double angularRate) {
+        setPower(angularRate / maxTicksPerSecond);
+    }
+
+    @Override
+    public void setVelocity(double angularRate, AngleUnit unit) {
+        setVelocity(unit.toRadians(angularRate) / (2 * Math.PI) * 28.0);
+    }
+
+    @Override
+    public void setMotorEnable() {
+        enabled = true;
+    }
+
+    @Override
+    public void setMotorDisable() {
+        enabled = false;
+    }
+
+    @Override
+    public boolean isMotorEnabled() {
+        return enabled;
+    }
+
+    @Deprecated
+    @Override
+    public void setPIDCoefficients(RunMode mode, PIDCoefficients pidCoefficients) {
+        setPIDFCoefficients(mode, new PIDFCoefficients(pidCoefficients.p, pidCoefficients.i, pidCoefficients.d, 0));
+    }
+
+    @Override
+    public void setPIDFCoefficients(RunMode mode, PIDFCoefficients pidfCoefficients) {
+        if (mode == RunMode.RUN_TO_POSITION) {
+            positionPidf = pidfCoefficients;
+        } else {
+            velocityPidf = pidfCoefficients;
+        }
+    }
+
+    @Override
+    public void setVelocityPIDFCoefficients(double p, double i, double d, double f) {
+        velocityPidf = new PIDFCoefficients(p, i, d, f);
+    }
+
+    @Override
+    public void setPositionPIDFCoefficients(double p) {
+        positionPidf = new PIDFCoefficients(p, 0, 0, 0);
+    }
+
+    @Deprecated
+    @Override
+    public PIDCoefficients getPIDCoefficients(RunMode mode) {
+        PIDFCoefficients pidf = getPIDFCoefficients(mode);
+        return new PIDCoefficients(pidf.p, pidf.i, pidf.d);
+    }
+
+    @Override
+    public PIDFCoefficients getPIDFCoefficients(RunMode mode) {
+        return mode == RunMode.RUN_TO_POSITION ? positionPidf : velocityPidf;
+    }
+
+    @Override
+    public void setTargetPositionTolerance(int tolerance) {
+        targetPositionTolerance = tolerance;
+    }
+
+    @Override
+    public int getTargetPositionTolerance() {
+        return targetPositionTolerance;
+    }
+
+    @Override
+    public double getCurrent(CurrentUnit unit) {
+        // Roughly 9.2A stall current, scaled by how hard the motor is working
+        double amps = 9.2 * Math.abs(power) * (1 - Math.min(1, Math.abs(rawVelocity) / maxTicksPerSecond));
+        return unit == CurrentUnit.MILLIAMPS ? amps * 1000 : amps;
+    }
+
+    @Override
+    public double getCurrentAlert(CurrentUnit unit) {
+        return unit == CurrentUnit.MILLIAMPS ? 10000 : 10;
+    }
+
+    @Override
+    public void setCurrentAlert(double current, CurrentUnit unit) {
+    }
+
+    @Override
+    public boolean isOverCurrent() {
+        return false;
+    }
+
+    @Override
+    public MotorConfigurationType getMotorType() {
+        return MotorConfigurationType.getUnspecifiedMotorType();
+    }
+
+    @Override
+    public void setMotorType(MotorConfigurationType motorType) {
+    }
+
+    @Override
+    public DcMotorController getController() {
+        return null;
+    }
+
+    @Override
+    public int getPortNumber() {
+        return 0;
+    }
+
+    @Override
+    public Manufacturer getManufacturer() {
+        return Manufacturer.Other;
+    }
+
+    @Override
+    public String getDeviceName() {
+        return "Simulated motor " + name;
+    }
+
+    @Override
+    public String getConnectionInfo() {
+        return "simulated";
+    }
+
+    @Override
+    public int getVersion() {
+        return 1;
+    }
+
+    @Override
+    public void resetDeviceConfigurationForOpMode() {
+        direction = Direction.FORWARD;
+        mode = RunMode.RUN_WITHOUT_ENCODER;
+        power = 0;
+    }
+
+    @Override
+    public void close() {
+    }
+}
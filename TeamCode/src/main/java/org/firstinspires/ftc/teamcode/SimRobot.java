@@ -0,0 +1,165 @@
+package org.firstinspires.ftc.teamcode;
+
+/**
+ * A simple physics model of our robot, so OpModes and subsystems can run on a laptop, much
+ * faster than real time. Build one, hand SimHardwareMap.create(robot) to the code under test,
+ * and call step() to move time forward. Or let the code's own LoopScheduler do it:
+ *
+ *   SimRobot robot = new SimRobot();
+ *   HardwareMap hardwareMap = SimHardwareMap.create(robot);
+ *   loopScheduler.simulate(robot.stepper(loopScheduler.getTargetPeriodMs()));
+ *
+ * The robot is also a NanoClock that reads the simulated time, for RobotState.Reader and
+ * LoopScheduler. CenterStageAutonomous.simulate() sets all of this up for a whole match.
+ *
+ * The drivetrain is modelled as a 4-motor mecanum drive: each wheel's speed follows its motor
+ * (see SimMotor), and the robot's motion comes from the four wheel speeds. The swing arm and
+ * suspension are just motors with encoders; the model doesn't include gravity or hard stops.
+ *
+ * Field coordinates: x is forward from where the robot started, y is to its left, and heading
+ * is counter-clockwise in radians, like the IMU.
+ */
+public class SimRobot implements NanoClock {
+
+    // Drivetrain geometry. Our drive motors are UltraPlanetary 3:1 + 4:1 on 75mm wheels.
+    static final double COUNTS_PER_MOTOR_REV = 28.0;
+    static final double DRIVE_GEAR_REDUCTION = (84.0 / 29.0) * (76.0 / 21.0);
+    static final double WHEEL_DIAMETER_INCHES = 75.0 / 25.4;
+    static final double TICKS_PER_INCH = COUNTS_PER_MOTOR_REV * DRIVE_GEAR_REDUCTION / (WHEEL_DIAMETER_INCHES * Math.PI);
+    static final double TRACK_WIDTH_INCHES = 15.0;
+    static final double WHEEL_BASE_INCHES = 13.0;
+    static final double DRIVE_MAX_TICKS_PER_SECOND = 2800.0;   // 6000 RPM at the motor
+
+    static final double ARM_MAX_TICKS_PER_SECOND = 1500.0;
+    static final double SUSPENSION_MAX_TICKS_PER_SECOND = 2000.0;
+    static final double INTAKE_MAX_TICKS_PER_SECOND = 2800.0;
+
+    static final double NOMINAL_BATTERY_VOLTAGE = 13.0;
+    static final double BATTERY_SAG_PER_MOTOR = 0.3;    // volts lost per motor at full power
+
+    public final SimMotor leftFront = new SimMotor("left_driveF", DRIVE_MAX_TICKS_PER_SECOND);
+    public final SimMotor leftBack = new SimMotor("left_driveB", DRIVE_MAX_TICKS_PER_SECOND);
+    public final SimMotor rightFront = new SimMotor("right_driveF", DRIVE_MAX_TICKS_PER_SECOND);
+    public final SimMotor rightBack = new SimMotor("right_driveB", DRIVE_MAX_TICKS_PER_SECOND);
+    public final SimMotor arm = new SimMotor("arm", ARM_MAX_TICKS_PER_SECOND);
+    public final SimMotor suspension = new SimMotor("suspension", SUSPENSION_MAX_TICKS_PER_SECOND);
+    public final SimMotor intake = new SimMotor("intake", INTAKE_MAX_TICKS_PER_SECOND);
+    private final SimMotor[] allMotors = {leftFront, leftBack, rightFront, rightBack, arm, suspension, intake};
+
+    // Which way each drive shaft has to turn (before any setDirection()) to drive the robot forward,
+    // where forward is the way the IMU heading points. The autonomous motor directions make positive
+    // power drive forward (that's what turnToHeading() relies on). TeleOp reverses all four of
+    // those, so its drivers' "forward" is the other end of the robot.
+    static final double LEFT_FRONT_MOUNT = -1;
+    static final double LEFT_BACK_MOUNT = -1;
+    static final double RIGHT_FRONT_MOUNT = -1;
+    static final double RIGHT_BACK_MOUNT = 1;
+
+    public final SimImu imu = new SimImu(this);
+    public final SimVoltageSensor battery = new SimVoltageSensor(this);
+    public final SimServo bucketServo = new SimServo("bucketServo");
+    public final SimServo doorServo = new SimServo("doorServo");
+    public final SimServo droneLauncherServo = new SimServo("droneLauncherServo");
+
+    private double x = 0;
+    private double y = 0;
+    private double heading = 0;
+    private double angularVelocity = 0;
+    private double time = 0;
+
+    /**
+     * Moves the whole robot forward in time.
+     *
+     * @param dt How long to simulate, in seconds. Keep it at or under a loop period (about 0.02).
+     */
+    public void step(double dt) {
+        for (SimMotor motor : allMotors) {
+            motor.step(dt);
+        }
+
+        // Wheel surface speeds in inches per second, positive means pushing the robot forward
+        double vLeftFront = LEFT_FRONT_MOUNT * leftFront.getRawVelocity() / TICKS_PER_INCH;
+        double vLeftBack = LEFT_BACK_MOUNT * leftBack.getRawVelocity() / TICKS_PER_INCH;
+        double vRightFront = RIGHT_FRONT_MOUNT * rightFront.getRawVelocity() / TICKS_PER_INCH;
+        double vRightBack = RIGHT_BACK_MOUNT * rightBack.getRawVelocity() / TICKS_PER_INCH;
+
+        // Mecanum forward kinematics, in the robot's frame
+        double forward = (vLeftFront + vLeftBack + vRightFront + vRightBack) / 4;
+        double left = (-vLeftFront + vLeftBack + vRightFront - vRightBack) / 4;
+        double halfSpan = (TRACK_WIDTH_INCHES + WHEEL_BASE_INCHES) / 2;
+        angularVelocity = (-vLeftFront - vLeftBack + vRightFront + vRightBack) / (4 * halfSpan);
+
+        // Integrate in the field frame, using the heading halfway through the step
+        double midHeading = heading + angularVelocity * dt / 2;
+        x += (forward * Math.cos(midHeading) - left * Math.sin(midHeading)) * dt;
+        y += (forward * Math.sin(midHeading) + left * Math.cos(midHeading)) * dt;
+        heading += angularVelocity * dt;
+        time += dt;
+    }
+
+    /**
+     * @return Something to hand to LoopScheduler.simulate(), which steps the robot one loop period at a time.
+     */
+    public Runnable stepper(final double periodMs) {
+        return new Runnable() {
+            @Override
+            public void run() {
+                step(periodMs / 1000.0);
+            }
+        };
+    }
+
+    public double getX() {
+        return x;
+    }
+
+    public double getY() {
+        return y;
+    }
+
+    /**
+     * @return Heading in radians, counter-clockwise from where the robot started.
+     */
+    public double getHeading() {
+        return heading;
+    }
+
+    /**
+     * @return Turn rate in radians per second, counter-clockwise.
+     */
+    public double getAngularVelocity() {
+        return angularVelocity;
+    }
+
+    /**
+     * @return Seconds simulated so far.
+     */
+    public double getTime() {
+        return time;
+    }
+
+    /**
+     * @return The simulated time in nanoseconds, starting from 0.
+     */
+    @Override
+    public long nanoTime() {
+        return Math.round(time * 1e9);
+    }
+
+    public double getBatteryVoltage() {
+        double load = 0;
+        for (SimMotor motor : allMotors) {
+            load += Math.abs(motor.getPower());
+        }
+        return NOMINAL_BATTERY_VOLTAGE - BATTERY_SAG_PER_MOTOR * load;
+    }
+
+    /**
+     * Put the robot somewhere on the field without moving any encoders.
+     */
+    public void setPose(double x, double y, double heading) {
+        this.x = x;
+        this.y = y;
+        this.heading = heading;
+    }
+}
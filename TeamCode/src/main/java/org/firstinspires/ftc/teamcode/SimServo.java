@@ -0,0 +1,94 @@
+package org.firstinspires.ftc.teamcode;
+
+import com.qualcomm.robotcore.hardware.Servo;
+
+/**
+ * A pretend servo. It goes straight to whatever position it's given.
+ */
+public class SimServo implements Servo {
+
+    private final String name;
+    private Direction direction = Direction.FORWARD;
+    private double position = 0;
+    private double minPosition = 0;
+    private double maxPosition = 1;
+
+    public SimServo(String name) {
+        this.name = name;
+    }
+
+    @Override
+    public com.qualcomm.robotcore.hardware.ServoController getController() {
+        return null;
+    }
+
+    @Override
+    public int getPortNumber() {
+        return 0;
+    }
+
+    @Override
+    public void setDirection(Direction direction) {
+        this.direction = direction;
+    }
+
+    @Override
+    public Direction getDirection() {
+        return direction;
+    }
+
+    @Override
+    public void setPosition(double position) {
+        this.position = DriveControl.clip(position, MIN_POSITION, MAX_POSITION);
+    }
+
+    @Override
+    public double getPosition() {
+        return position;
+    }
+
+    /**
+     * @return Where the servo horn actually is, from 0 to 1, after the range and direction are applied.
+     */
+    public double getActualPosition() {
+        double scaled = minPosition + position * (maxPosition - minPosition);
+        return direction == Direction.REVERSE ? 1 - scaled : scaled;
+    }
+
+    @Override
+    public void scaleRange(double min, double max) {
+        minPosition = DriveControl.clip(min, MIN_POSITION, MAX_POSITION);
+        maxPosition = DriveControl.clip(max, MIN_POSITION, MAX_POSITION);
+    }
+
+    @Override
+    public Manufacturer getManufacturer() {
+        return Manufacturer.Other;
+    }
+
+    @Override
+    public String getDeviceName() {
+        return "Simulated servo " + name;
+    }
+
+    @Override
+    public String getConnectionInfo() {
+        return "simulated";
+    }
+
+    @Override
+    public int getVersion() {
+        return 1;
+    }
+
+    @Override
+    public void resetDeviceConfigurationForOpMode() {
+        direction = Direction.FORWARD;
+        minPosition = MIN_POSITION;
+        maxPosition = MAX_POSITION;
+    }
+
+    @Override
+    public void close() {
+    }
+}
@@ -0,0 +1,48 @@
+package org.firstinspires.ftc.teamcode;
+
+import com.qualcomm.robotcore.hardware.VoltageSensor;
+
+/**
+ * A pretend battery. The voltage sags a little while the simulated motors are working.
+ */
+public class SimVoltageSensor implements VoltageSensor {
+
+    private final SimRobot robot;
+
+    public SimVoltageSensor(SimRobot robot) {
+        this.robot = robot;
+    }
+
+    @Override
+    public double getVoltage() {
+        return robot.getBatteryVoltage();
+    }
+
+    @Override
+    public Manufacturer getManufacturer() {
+        return Manufacturer.Other;
+    }
+
+    @Override
+    public String getDeviceName() {
+        return "Simulated battery";
+    }
+
+    @Override
+    public String getConnectionInfo() {
+        return "simulated";
+    }
+
+    @Override
+    public int getVersion() {
+        return 1;
+    }
+
+    @Override
+    public void resetDeviceConfigurationForOpMode() {
+    }
+
+    @Override
+    public void close() {
+    }
+}
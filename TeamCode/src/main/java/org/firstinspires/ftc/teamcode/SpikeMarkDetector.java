@@ -0,0 +1,181 @@
+package org.firstinspires.ftc.teamcode;
+
+import org.opencv.core.Core;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.Rect;
+import org.opencv.core.Scalar;
+import org.opencv.imgproc.Imgproc;
+
+/**
+ * The image processing behind FirstVisionProcessor: whichever of the three spike mark rectangles
+ * is the most saturated is where the team prop is. It only uses OpenCV (no Android classes), so
+ * it can also be run and benchmarked on a laptop.
+ *
+ * There are two ways to use it:
+ *  - The static detect() converts the whole frame to HSV, then averages the three rectangles.
+ *  - An instance (new SpikeMarkDetector(left, middle, right)) only converts the three rectangles.
+ *    They're about 6% of a 640x480 frame, so this is a lot less work. It keeps a submat view of
+ *    each rectangle and an HSV buffer for each one, so nothing is allocated from frame to frame.
+ *    Call release() when you're done with it, since Mats hold native memory the GC doesn't see.
+ */
+public class SpikeMarkDetector {
+
+    // Same order as FirstVisionProcessor.Selected
+    public static final int NONE = 0;
+    public static final int LEFT = 1;
+    public static final int MIDDLE = 2;
+    public static final int RIGHT = 3;
+
+    /**
+     * @param frame An RGB camera frame
+     * @param hsv   Gets the frame converted to HSV. Reused from frame to frame.
+     * @return NONE, LEFT, MIDDLE or RIGHT
+     */
+    public static int detect(Mat frame, Mat hsv, Rect left, Rect middle, Rect right) {
+        Imgproc.cvtColor(frame, hsv, Imgproc.COLOR_RGB2HSV);
+
+        return pick(getAvgSaturation(hsv, left),
+                getAvgSaturation(hsv, middle),
+                getAvgSaturation(hsv, right));
+    }
+
+    /**
+     * Same as above, but also hands back the three saturations.
+     *
+     * @param saturations Gets left, middle and right's average saturation.
+     */
+    public static int detect(Mat frame, Mat hsv, Rect left, Rect middle, Rect right, double[] saturations) {
+        Imgproc.cvtColor(frame, hsv, Imgproc.COLOR_RGB2HSV);
+        saturations[0] = getAvgSaturation(hsv, left);
+        saturations[1] = getAvgSaturation(hsv, middle);
+        saturations[2] = getAvgSaturation(hsv, right);
+        return pick(saturations[0], saturations[1], saturations[2]);
+    }
+
+    /**
+     * @return Which rectangle is the most saturated, or NONE if there's a tie.
+     */
+    public static int pick(double satLeft, double satMiddle, double satRight) {
+        if ((satLeft > satMiddle) && (satLeft > satRight)) {
+            return LEFT;
+        } else if ((satMiddle > satLeft) && (satMiddle > satRight)) {
+            return MIDDLE;
+        } else if ((satRight > satLeft) && (satRight > satMiddle)) {
+            return RIGHT;
+        } else {
+            return NONE;
+        }
+    }
+
+    /**
+     * @return How much more saturated the most saturated rectangle is than the next one. Near 0
+     *         means pick() was nearly a tie.
+     */
+    public static double margin(double satLeft, double satMiddle, double satRight) {
+        double max = Math.max(satLeft, Math.max(satMiddle, satRight));
+        double min = Math.min(satLeft, Math.min(satMiddle, satRight));
+        double second = satLeft + satMiddle + satRight - max - min;
+        return max - second;
+    }
+
+    /**
+     * Makes (and releases) a submat header every call. The instance detect() keeps its submats
+     * between frames, so it's the cheaper one to run every frame.
+     */
+    public static double getAvgSaturation(Mat hsv, Rect rect) {
+        Mat submat = hsv.submat(rect);
+        try {
+            Scalar color = Core.mean(submat);
+            return color.val[1];
+        } finally {
+            // The view's header is native memory, and the GC won't free it soon enough
+            submat.release();
+        }
+    }
+
+    private final Rect[] rects;
+    private final MatTracker tracker;
+    private final Mat[] views = new Mat[3];     // submats of the current frame, one per rectangle
+    private final Mat[] hsvRois = new Mat[3];   // each rectangle converted to HSV
+    private final double[] saturations = {Double.NaN, Double.NaN, Double.NaN};
+
+    // Which frame the views point into. VisionPortal hands us the same Mat every frame, so the
+    // views only get made again if the frame (or its pixel buffer) changes.
+    private long viewFrameAddr = 0;
+    private long viewDataAddr = 0;
+
+    /**
+     * The rectangles are copied, so changing them afterwards does nothing.
+     */
+    public SpikeMarkDetector(Rect left, Rect middle, Rect right) {
+        this(left, middle, right, new MatTracker("SpikeMarkDetector"));
+    }
+
+    /**
+     * @param tracker Where the detector's Mats get counted, so a processor can share its own.
+     */
+    public SpikeMarkDetector(Rect left, Rect middle, Rect right, MatTracker tracker) {
+        this.tracker = tracker;
+        rects = new Rect[]{left.clone(), middle.clone(), right.clone()};
+        for (int i = 0; i < 3; i++) {
+            hsvRois[i] = tracker.create("SpikeMarkDetector hsv " + i, rects[i].height, rects[i].width, CvType.CV_8UC3);
+        }
+    }
+
+    /**
+     * Converts just the three rectangles to HSV and picks the most saturated one.
+     *
+     * @param frame An RGB camera frame
+     * @return NONE, LEFT, MIDDLE or RIGHT
+     */
+    public int detect(Mat frame) {
+        updateViews(frame);
+        for (int i = 0; i < 3; i++) {
+            Imgproc.cvtColor(views[i], hsvRois[i], Imgproc.COLOR_RGB2HSV);
+            saturations[i] = Core.mean(hsvRois[i]).val[1];
+        }
+        return pick(saturations[0], saturations[1], saturations[2]);
+    }
+
+    private void updateViews(Mat frame) {
+        if (views[0] != null && frame.getNativeObjAddr() == viewFrameAddr && frame.dataAddr() == viewDataAddr) {
+            return;
+        }
+        releaseViews();
+        for (int i = 0; i < 3; i++) {
+            views[i] = tracker.submat("SpikeMarkDetector view " + i, frame, rects[i]);
+        }
+        viewFrameAddr = frame.getNativeObjAddr();
+        viewDataAddr = frame.dataAddr();
+    }
+
+    private void releaseViews() {
+        for (int i = 0; i < 3; i++) {
+            tracker.release(views[i]);
+            views[i] = null;
+        }
+    }
+
+    /**
+     * @param side LEFT, MIDDLE or RIGHT
+     * @return That rectangle's average saturation from the last detect(), or NaN before the first one.
+     */
+    public double getSaturation(int side) {
+        return saturations[side - LEFT];
+    }
+
+    /**
+     * Frees the views and HSV buffers. Don't call detect() after this.
+     */
+    public void release() {
+        releaseViews();
+        for (Mat hsvRoi : hsvRois) {
+            tracker.release(hsvRoi);
+        }
+    }
+
+    public MatTracker getTracker() {
+        return tracker;
+    }
+}
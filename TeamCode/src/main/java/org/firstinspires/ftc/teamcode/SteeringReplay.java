@@ -0,0 +1,139 @@
+package org.firstinspires.ftc.teamcode;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Replays the steering in a cycle log from CenterStageAutonomous through the current heading
+ * control code, on a laptop. It only checks steering: see below for what it doesn't cover.
+ *
+ * For every recorded cycle where the autonomous was steering to a heading, the recorded IMU yaw,
+ * yaw rate, heading offset and heading target are fed back through DriveControl and PidfController
+ * (the same code getSteeringCorrection() uses), and the result is compared to the steering
+ * correction the robot worked out. The controllers are run with update() on the logged timestamps
+ * and started over when getSteeringCorrection() would have, so the integral is rebuilt too, and
+ * changes to any of the gains, the integral limits or the integral zone show up.
+ * If you've changed DriveControl or its gains, this shows you exactly which cycles of a real match would
+ * have been steered differently.
+ *
+ * The wheel power check only redoes moveRobot()'s mix of the logged drive and turn speeds
+ * (DriveControl.tankPowers()), so it only catches changes to that mix. What's not replayed:
+ *  - the drive speed itself: followDrives()' motion profile feedforward and encoder feedback
+ *    (the encoder columns aren't read at all)
+ *  - holonomic moves (HolonomicController), which log a NaN target heading and are skipped
+ *
+ * Note that this is an open-loop replay: the recorded sensor values can't react to different
+ * outputs, so it tells you where your change diverges, not where the robot would have ended up.
+ *
+ * To run it, copy the log off the Control Hub (it's in /sdcard/FIRST/data), then from TeamCode/src/main/java:
+ *   javac org/firstinspires/ftc/teamcode/{CycleLog,SteeringReplay,DriveControl,PidfController}.java
+ *   java org.firstinspires.ftc.teamcode.SteeringReplay CenterStageAutonomous.cyclelog [tolerance]
+ */
+public class SteeringReplay {
+
+    // Powers are stored as floats, so anything closer than this counts as the same
+    static final double DEFAULT_TOLERANCE = 1e-4;
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.err.println("usage: SteeringReplay <cyclelog file> [tolerance]");
+            System.exit(2);
+        }
+        double tolerance = args.length > 1 ? Double.parseDouble(args[1]) : DEFAULT_TOLERANCE;
+
+        CycleLog.Reader log = new CycleLog.Reader(new File(args[0]));
+        Result result = replay(log, tolerance);
+
+        System.out.printf("Replayed %d cycles (%.1f s)%n", result.cycles, result.durationSeconds);
+        System.out.printf("Steering correction: %d mismatches, max difference %.6f%n",
+                result.steeringMismatches, result.maxSteeringDifference);
+        System.out.printf("Drive/turn mix:      %d mismatches, max difference %.6f%n",
+                result.powerMismatches, result.maxPowerDifference);
+        if (result.firstMismatch >= 0) {
+            System.out.printf("First mismatch at cycle %d (%.3f s)%n", result.firstMismatch, result.firstMismatchSeconds);
+            System.exit(1);
+        }
+        System.out.println("Steering and the drive/turn mix match the recording.");
+    }
+
+    public static class Result {
+        public int cycles = 0;
+        public double durationSeconds = 0;
+        public int steeringMismatches = 0;
+        public int powerMismatches = 0;
+        public double maxSteeringDifference = 0;
+        public double maxPowerDifference = 0;
+        public int firstMismatch = -1;
+        public double firstMismatchSeconds = 0;
+    }
+
+    public static Result replay(CycleLog.Reader log, double tolerance) {
+        Result result = new Result();
+        int count = log.getRecordCount();
+        if (count == 0) return result;
+
+        long start = log.getTimestamp(0);
+        double[] wheelSpeeds = new double[2];
+        PidfController turnController = DriveControl.turnController();
+        PidfController driveController = DriveControl.driveController();
+        // The last cycle getSteeringCorrection() ran, to work out dt and when it started over
+        PidfController lastController = null;
+        long lastSteeringNanos = 0;
+
+        for (int i = 0; i < count; i++) {
+            boolean mismatch = false;
+
+            // Steering, only on cycles where the autonomous was steering to a heading
+            double targetHeading = log.get(CycleLog.TARGET_HEADING, i);
+            if (!Double.isNaN(targetHeading)) {
+                double robotHeading = log.get(CycleLog.YAW, i) - log.get(CycleLog.HEADING_OFFSET, i);
+                double error = DriveControl.headingError(targetHeading, robotHeading);
+                int controllerId = (int) log.get(CycleLog.STEERING_CONTROLLER, i);
+                if (controllerId != CycleLog.CONTROLLER_NONE) {
+                    PidfController controller = controllerId == CycleLog.CONTROLLER_TURN ? turnController : driveController;
+                    // Same restarts as getSteeringCorrection(). Its targetHeading is whatever the
+                    // previous cycle logged (moves and commands set it to NaN in between).
+                    long now = log.getTimestamp(i);
+                    double dt = (now - lastSteeringNanos) / 1e9;
+                    double previousTarget = i > 0 ? log.get(CycleLog.TARGET_HEADING, i - 1) : Double.NaN;
+                    if (controller != lastController || targetHeading != previousTarget
+                            || dt > DriveControl.MAX_STEERING_GAP_SECONDS) {
+                        controller.reset();
+                        dt = 0;
+                    }
+                    lastController = controller;
+                    lastSteeringNanos = now;
+
+                    double correction = controller.update(error, log.get(CycleLog.YAW_RATE, i), dt);
+                    double difference = Math.abs(correction - log.get(CycleLog.STEERING_CORRECTION, i));
+                    result.maxSteeringDifference = Math.max(result.maxSteeringDifference, difference);
+                    if (difference > tolerance) {
+                        result.steeringMismatches++;
+                        mismatch = true;
+                    }
+                }
+
+                // Wheel powers from the logged drive and turn speeds (only moveRobot()'s mix, not the speeds)
+                DriveControl.tankPowers(log.get(CycleLog.DRIVE_SPEED, i), log.get(CycleLog.TURN_SPEED, i), wheelSpeeds);
+                double powerDifference = Math.max(
+                        Math.max(Math.abs(wheelSpeeds[0] - log.get(CycleLog.LEFT_FRONT_POWER, i)),
+                                Math.abs(wheelSpeeds[0] - log.get(CycleLog.LEFT_BACK_POWER, i))),
+                        Math.max(Math.abs(wheelSpeeds[1] - log.get(CycleLog.RIGHT_FRONT_POWER, i)),
+                                Math.abs(wheelSpeeds[1] - log.get(CycleLog.RIGHT_BACK_POWER, i))));
+                result.maxPowerDifference = Math.max(result.maxPowerDifference, powerDifference);
+                if (powerDifference > tolerance) {
+                    result.powerMismatches++;
+                    mismatch = true;
+                }
+            }
+
+            if (mismatch && result.firstMismatch < 0) {
+                result.firstMismatch = i;
+                result.firstMismatchSeconds = (log.getTimestamp(i) - start) / 1e9;
+            }
+            result.cycles++;
+        }
+        result.durationSeconds = (log.getTimestamp(count - 1) - start) / 1e9;
+        return result;
+    }
+}
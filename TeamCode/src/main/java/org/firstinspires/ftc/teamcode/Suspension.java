@@ -1,18 +1,17 @@
 package org.firstinspires.ftc.teamcode;
 
 import com.qualcomm.robotcore.hardware.DcMotor;
+import com.qualcomm.robotcore.hardware.DcMotorEx;
 import com.qualcomm.robotcore.hardware.Gamepad;
 import com.qualcomm.robotcore.hardware.HardwareMap;
 import com.qualcomm.robotcore.util.ElapsedTime;
 import com.qualcomm.robotcore.util.Range;
 
-import org.firstinspires.ftc.robotcore.external.Telemetry;
-
 public class Suspension {
 
-    protected static DcMotor susMotor;
+    protected static CachingMotor susMotor;
     private final HardwareMap hardwareMap;
-    private final Telemetry telemetry;
+    private final ThrottledTelemetry telemetry;
     private final Gamepad gamepad;
     private final ElapsedTime runtime = new ElapsedTime();
 
@@ -20,6 +19,10 @@ public class Suspension {
 
     public int currentSetPosition = 0;
 
+    // Telemetry lines, set every loop but only sent when the Driver Station wants them
+    private final int stickSlot;
+    private final int positionSlot;
+
     /**
      * Houses LOW and HIGH encoder tick amounts for suspension motor.
      */
@@ -28,20 +31,23 @@ public class Suspension {
         static final int HIGH = -8400; //-8752
     }
 
-    public Suspension(HardwareMap hardwareMap, Telemetry telemetry, Gamepad gamepad) {
+    public Suspension(HardwareMap hardwareMap, ThrottledTelemetry telemetry, Gamepad gamepad) {
         this.hardwareMap = hardwareMap;
         this.telemetry = telemetry;
         this.gamepad = gamepad;
 
-        susMotor = hardwareMap.get(DcMotor.class, "suspension");
+        susMotor = new CachingMotor(hardwareMap.get(DcMotorEx.class, "suspension"));
         susMotor.setZeroPowerBehavior(DcMotor.ZeroPowerBehavior.BRAKE);
         susMotor.setMode(DcMotor.RunMode.STOP_AND_RESET_ENCODER);
         //you need to set a position count BEFORE switching to runToPosition mode!!
         susMotor.setTargetPosition(EncoderCount.LOW);
 
-        telemetry.addData("Suspension Motor Starting At",  "%7d",
+        telemetry.getTelemetry().addData("Suspension Motor Starting At",  "%7d",
                 susMotor.getCurrentPosition());
         susMotor.setMode(DcMotor.RunMode.RUN_USING_ENCODER);
+
+        stickSlot = telemetry.addSlot("Left stick Y", "%.2f");
+        positionSlot = telemetry.addSlot("Suspension Motor encoder count is", "%.0f");
     }
 
     public void SetPosition(int position) {
@@ -56,7 +62,14 @@ public class Suspension {
         susMotor.setTargetPosition(targetPosition);
     }
 
-    public void loop() {
+    /**
+     * Make the suspension act the same whatever the battery is at (see CachingMotor.setVoltageCompensation()).
+     */
+    public void setVoltageCompensation(VoltageCompensation compensation) {
+        susMotor.setVoltageCompensation(compensation);
+    }
+
+    public void loop(RobotState state) {
             //if (gamepad.dpad_down) susMotor.setPower(-0.1);
             //else if (gamepad.dpad_up) susMotor.setPower(0.1);
             //else susMotor.setPower(0);
@@ -65,19 +78,19 @@ public class Suspension {
         //targetPosition = Range.clip((int)(targetPosition + gamepad.left_stick_y * 0.5), EncoderCount.HIGH, EncoderCount.LOW);
         //susMotor.setTargetPosition(targetPosition);
 
-        if((gamepad.left_stick_y < -0.2) && (susMotor.getCurrentPosition() > EncoderCount.HIGH)) susMotor.setPower(-0.75);
-        else if((gamepad.left_stick_y > 0.2) && (susMotor.getCurrentPosition() < EncoderCount.LOW)) susMotor.setPower(0.75);
+        if((gamepad.left_stick_y < -0.2) && (state.suspensionPosition > EncoderCount.HIGH)) susMotor.setPower(-0.75);
+        else if((gamepad.left_stick_y > 0.2) && (state.suspensionPosition < EncoderCount.LOW)) susMotor.setPower(0.75);
         else susMotor.setPower(0);
 
-        telemetry.addData("Left stick Y", gamepad.left_stick_y);
-        telemetry.addData("Suspension Motor encoder count is", susMotor.getCurrentPosition());
+        telemetry.set(stickSlot, gamepad.left_stick_y);
+        telemetry.set(positionSlot, state.suspensionPosition);
 
 
     }
 
     public void initLoop() {
         //telemetry.addData("Swing Arm Motor 1 Position is:", swingArmMotor.getCurrentPosition());
-        telemetry.addData("Suspension Motor encoder count is", susMotor.getCurrentPosition());
+        telemetry.getTelemetry().addData("Suspension Motor encoder count is", susMotor.getCurrentPosition());
     }
 }
 
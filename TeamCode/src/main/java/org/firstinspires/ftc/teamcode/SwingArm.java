@@ -1,19 +1,18 @@
 package org.firstinspires.ftc.teamcode;
 
 import com.qualcomm.robotcore.hardware.DcMotor;
+import com.qualcomm.robotcore.hardware.DcMotorEx;
 import com.qualcomm.robotcore.hardware.Gamepad;
 import com.qualcomm.robotcore.hardware.HardwareMap;
 import com.qualcomm.robotcore.util.ElapsedTime;
 import com.qualcomm.robotcore.util.Range;
 
-import org.firstinspires.ftc.robotcore.external.Telemetry;
-
 public class SwingArm {
 
     //protected DcMotor swingArmMotor;
-    protected static DcMotor armMotor;
+    protected static CachingMotor armMotor;
     private final HardwareMap hardwareMap;
-    private final Telemetry telemetry;
+    private final ThrottledTelemetry telemetry;
     private final Gamepad gamepad;
     private final ElapsedTime runtime = new ElapsedTime();
 
@@ -55,7 +54,15 @@ public class SwingArm {
 
     final boolean isTesting = true;
 
-    public SwingArm(HardwareMap hardwareMap, Telemetry telemetry, Gamepad gamepad, boolean isAutonomous) {
+    // Telemetry lines, set every loop but only sent when the Driver Station wants them
+    private final int positionSlot;
+    private final int gamepadSlot;
+    private final int branchSlot;
+    private final int targetSlot;
+    private final int powerSlot;
+    private final int runningSlot;
+
+    public SwingArm(HardwareMap hardwareMap, ThrottledTelemetry telemetry, Gamepad gamepad, boolean isAutonomous) {
         this.hardwareMap = hardwareMap;
         this.telemetry = telemetry;
         this.gamepad = gamepad;
@@ -69,7 +76,8 @@ public class SwingArm {
 
         //swingArmMotor.setMode(DcMotor.RunMode.RUN_USING_ENCODER);
 
-        armMotor = hardwareMap.get(DcMotor.class, "arm");
+        // loop() sets the mode and power every cycle, CachingMotor only sends the ones that change.
+        armMotor = new CachingMotor(hardwareMap.get(DcMotorEx.class, "arm"));
         //use the below line if the motor runs the wrong way!!
         armMotor.setDirection(DcMotor.Direction.REVERSE);
         if (isTesting) armMotor.setZeroPowerBehavior(DcMotor.ZeroPowerBehavior.FLOAT);
@@ -80,8 +88,15 @@ public class SwingArm {
 
         //telemetry.addData("Swing Arm Motor 1 Starting At",  "%7d",
         //swingArmMotor.getCurrentPosition());
-        telemetry.addData("Arm Motor Starting At",  "%7d",
+        telemetry.getTelemetry().addData("Arm Motor Starting At",  "%7d",
                 armMotor.getCurrentPosition());
+
+        positionSlot = telemetry.addSlot("Swing Arm Motor 2 Position is:", "%.0f");
+        gamepadSlot = telemetry.addSlot("Gamepad right stick/left stick:", "%f %f");
+        branchSlot = telemetry.addSlot("Manual Branch", null);
+        targetSlot = telemetry.addSlot("Swing arm target position", "%.0f");
+        powerSlot = telemetry.addSlot("SwingArmMotorPower", "%.2f");
+        runningSlot = telemetry.addSlot("SwingArm Currently Running to Junction", null);
     }
 
     /**
@@ -140,8 +155,9 @@ public class SwingArm {
      * If it has been, adjust the swing arm up (joystick up) or down (joystick down),
      * and if it hasn't, make sure that the motor speed is 0.
      * @param gamepad What gamepad will be used
+     * @param state The robot state for this cycle
      */
-    private void readGamepad(Gamepad gamepad) {
+    private void readGamepad(Gamepad gamepad, RobotState state) {
         if (gamepad.a) {
             setPosition(1);
         } else if (gamepad.b || gamepad.x) {
@@ -150,33 +166,33 @@ public class SwingArm {
             setPosition(3);
         }
 
-        telemetry.addData("Gamepad right stick/left stick:", "%f %f", gamepad.right_stick_y, gamepad.left_stick_y);
+        telemetry.set(gamepadSlot, gamepad.right_stick_y, gamepad.left_stick_y);
         if (gamepad.right_stick_y > 0.1 || gamepad.right_stick_y < -0.1 ) {
             targetPositionCount = Range.clip((int)(targetPositionCount + ADJUSTMENT_COUNT*-gamepad.right_stick_y), LOW_HARDSTOP, HIGH_HARDSTOP);
             //swingArmMotor.setTargetPosition(targetPositionCount);
             armMotor.setTargetPosition((int)targetPositionCount);
-            telemetry.addData("Manual Branch", "Adjustment made");
+            telemetry.setText(branchSlot, "Adjustment made");
         } else if (!currentlyRunningToPosition) {
             //This is so that if you let go of the joystick, it immediately stops the arm from moving. Not a bug!!!
-            targetPositionCount = Range.clip((int) armMotor.getCurrentPosition(), LOW_HARDSTOP, HIGH_HARDSTOP);
+            targetPositionCount = Range.clip(state.armPosition, LOW_HARDSTOP, HIGH_HARDSTOP);
             armMotor.setTargetPosition((int)targetPositionCount);
-            telemetry.addData("Manual Branch", "Stop moving");
+            telemetry.setText(branchSlot, "Stop moving");
         } else {
-            telemetry.addData("Manual Branch", "Running to Junction");
+            telemetry.setText(branchSlot, "Running to Junction");
 
         }
     }
 
 
-    public void loop() {
-        double currentPosition = armMotor.getCurrentPosition();
+    public void loop(RobotState state) {
+        double currentPosition = state.armPosition;
         //telemetry.addData("Swing Arm Motor 1 Position is:", swingArmMotor.getCurrentPosition());
-        telemetry.addData("Swing Arm Motor 2 Position is:", armMotor.getCurrentPosition());
-        readGamepad(gamepad);
+        telemetry.set(positionSlot, state.armPosition);
+        readGamepad(gamepad, state);
         setPower(currentPosition);
-        telemetry.addData("Swing arm target position", targetPositionCount);
-        telemetry.addData("SwingArmMotorPower", armMotor.getPower());
-        telemetry.addData("SwingArm Currently Running to Junction", currentlyRunningToPosition);
+        telemetry.set(targetSlot, targetPositionCount);
+        telemetry.set(powerSlot, armMotor.getPower());
+        telemetry.setText(runningSlot, String.valueOf(currentlyRunningToPosition));
 
         if (currentlyRunningToPosition) {
             if (!armMotor.isBusy()) {
@@ -197,9 +213,23 @@ public class SwingArm {
     }
 
 
+    /**
+     * @return The encoder count the arm is currently trying to reach.
+     */
+    public int getTargetPosition() {
+        return targetPositionCount;
+    }
+
     public void initLoop() {
         //telemetry.addData("Swing Arm Motor 1 Position is:", swingArmMotor.getCurrentPosition());
-        telemetry.addData("Arm Motor Position is:", armMotor.getCurrentPosition());
+        telemetry.getTelemetry().addData("Arm Motor Position is:", armMotor.getCurrentPosition());
+    }
+
+    /**
+     * Make the arm act the same whatever the battery is at (see CachingMotor.setVoltageCompensation()).
+     */
+    public void setVoltageCompensation(VoltageCompensation compensation) {
+        armMotor.setVoltageCompensation(compensation);
     }
 
     public void setBrakeMode(boolean b) {
@@ -1,5 +1,6 @@
 package org.firstinspires.ftc.teamcode;
 
+import com.qualcomm.hardware.lynx.LynxModule;
 import com.qualcomm.robotcore.eventloop.opmode.LinearOpMode;
 import com.qualcomm.robotcore.eventloop.opmode.TeleOp;
 import com.qualcomm.robotcore.hardware.DcMotor;
@@ -11,7 +12,12 @@ public class SwingArmTest extends LinearOpMode {
     protected ElapsedTime runtime = new ElapsedTime();
     @Override
     public void runOpMode() {
-        swingArm = new SwingArm(hardwareMap, telemetry, gamepad2, false);
+        ThrottledTelemetry loopTelemetry = new ThrottledTelemetry(telemetry);
+        int loopTimeSlot = loopTelemetry.addSlot("Loop Time", "%.0f");
+        swingArm = new SwingArm(hardwareMap, loopTelemetry, gamepad2, false);
+        // Only the arm is used here, so there are no drive motors, IMU or battery to read.
+        RobotState.Reader stateReader = new RobotState.Reader(hardwareMap.getAll(LynxModule.class),
+                null, null, null, null, null, null);
         swingArm.setBrakeMode(false);
         while (opModeInInit()) {
             swingArm.initLoop();
@@ -21,10 +27,10 @@ public class SwingArmTest extends LinearOpMode {
 
         if (opModeIsActive()) {
             while (opModeIsActive()) {
-                swingArm.loop();
-                telemetry.addData("Loop Time", (int)runtime.milliseconds());
+                swingArm.loop(stateReader.read());
+                loopTelemetry.set(loopTimeSlot, runtime.milliseconds());
                 runtime.reset();
-                telemetry.update();
+                loopTelemetry.update();
             }
         }
     }
@@ -0,0 +1,162 @@
+package org.firstinspires.ftc.teamcode;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * Works out what the autonomous has time for. It remembers how long each step of each route took
+ * in earlier runs (saved in a small text file next to the cycle log), and uses that to pick the
+ * plan that scores the most points in the time left, and to decide how long the stall wait can be.
+ *
+ * Steps are counted the same way followRoute() goes through a CompiledRoute: a group of joined
+ * drives is one step, stored at its first drive, and the rest of the group take no time. Steps
+ * that have never been timed are estimated from the route itself (profile durations, turn
+ * angles, pauses).
+ *
+ * Pure Java, so it can run on a laptop.
+ */
+public class TaskPlanner {
+
+    // Points for autonomous tasks, from the CENTERSTAGE game manual (using our team prop)
+    static final int PURPLE_PIXEL_POINTS = 20;
+    static final int YELLOW_PIXEL_POINTS = 20;
+    static final int PARK_POINTS = 5;
+
+    // Guesses for steps that have never been timed
+    static final double TURN_DEGREES_PER_SECOND = 120;
+    static final double TURN_SETTLE_SECONDS = 0.3;
+    static final double DELIVER_SECONDS = 3.0;
+
+    // How much each new timing counts against the old ones
+    static final double HISTORY_WEIGHT = 0.5;
+
+    private final double[][] history;   // seconds, by route and step; NaN if never timed
+
+    public TaskPlanner(int routeCount, int maxSteps) {
+        history = new double[routeCount][maxSteps];
+        for (double[] steps : history) {
+            Arrays.fill(steps, Double.NaN);
+        }
+    }
+
+    /**
+     * Remember how long a step took. Doesn't save; call save() once the route is done.
+     */
+    public void record(int routeIndex, int step, double seconds) {
+        if (!inRange(routeIndex, step)) return;
+        double old = history[routeIndex][step];
+        history[routeIndex][step] = Double.isNaN(old) ? seconds : old + HISTORY_WEIGHT * (seconds - old);
+    }
+
+    private boolean inRange(int routeIndex, int step) {
+        return routeIndex >= 0 && routeIndex < history.length && step >= 0 && step < history[routeIndex].length;
+    }
+
+    /**
+     * @return How long step i of the route should take, in seconds. Stall waits count as 0.
+     */
+    public double estimate(int routeIndex, CompiledRoute route, int i) {
+        if (route.type[i] == Path.WAIT) return 0;
+        if (inRange(routeIndex, i) && !Double.isNaN(history[routeIndex][i])) {
+            return history[routeIndex][i];
+        }
+        return modelSeconds(route, i);
+    }
+
+    /**
+     * @return How long steps from to the end of the route should take, not counting stall waits.
+     */
+    public double remainingSeconds(int routeIndex, CompiledRoute route, int from) {
+        double seconds = 0;
+        for (int i = from; i < route.size; i++) {
+            seconds += estimate(routeIndex, route, i);
+        }
+        return seconds;
+    }
+
+    /**
+     * A guess at how long a step takes, from what's in the route.
+     */
+    static double modelSeconds(CompiledRoute route, int i) {
+        switch (route.type[i]) {
+            case Path.TURN:
+                double from = i > 0 ? route.heading[i - 1] : 0;
+                return Math.abs(DriveControl.headingError(route.heading[i], from)) / TURN_DEGREES_PER_SECOND
+                        + (route.settle[i] ? TURN_SETTLE_SECONDS : 0);
+            case Path.PAUSE:
+                return route.pauseMs[i] / 1000.0;
+            case Path.DELIVER:
+                return DELIVER_SECONDS;
+            case Path.WAIT:
+                return 0;
+            default:
+                // Drives and moves: the profile is only stored at the first drive of a group
+                MotionProfile profile = route.profiles[i];
+                return profile == null ? 0 : profile.getDuration();
+        }
+    }
+
+    /**
+     * Picks the plan to run.
+     *
+     * @param seconds      How long each candidate plan should take, not counting any stall wait.
+     * @param points       What each candidate scores.
+     * @param budget       Seconds left in autonomous.
+     * @param minimumWait  Seconds of stall wait that have to fit as well (0 if not stalling).
+     * @return The index of the highest scoring candidate that fits. Ties go to the earlier one, so
+     *         list the drivers' choice first. If nothing fits, the quickest one.
+     */
+    public static int choose(double[] seconds, int[] points, double budget, double minimumWait) {
+        int best = -1;
+        int quickest = 0;
+        for (int i = 0; i < seconds.length; i++) {
+            if (seconds[i] < seconds[quickest]) quickest = i;
+            if (seconds[i] + minimumWait <= budget && (best < 0 || points[i] > points[best])) {
+                best = i;
+            }
+        }
+        return best >= 0 ? best : quickest;
+    }
+
+    /**
+     * Reads the timings saved by save(). A missing file just means there's no history yet.
+     */
+    public void load(File file) throws IOException {
+        if (!file.exists()) return;
+        try (BufferedReader reader = new BufferedReader(new FileReader(file))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                // route step seconds
+                String[] fields = line.trim().split("\\s+");
+                if (fields.length != 3) continue;
+                try {
+                    int routeIndex = Integer.parseInt(fields[0]);
+                    int step = Integer.parseInt(fields[1]);
+                    if (inRange(routeIndex, step)) {
+                        history[routeIndex][step] = Double.parseDouble(fields[2]);
+                    }
+                } catch (NumberFormatException e) {
+                    // Skip lines we can't read
+                }
+            }
+        }
+    }
+
+    public void save(File file) throws IOException {
+        try (PrintWriter writer = new PrintWriter(new FileWriter(file))) {
+            for (int routeIndex = 0; routeIndex < history.length; routeIndex++) {
+                for (int step = 0; step < history[routeIndex].length; step++) {
+                    if (!Double.isNaN(history[routeIndex][step])) {
+                        writer.printf(Locale.US, "%d %d %.3f%n", routeIndex, step, history[routeIndex][step]);
+                    }
+                }
+            }
+        }
+    }
+}
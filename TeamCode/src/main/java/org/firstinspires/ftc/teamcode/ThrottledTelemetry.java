@@ -0,0 +1,143 @@
+package org.firstinspires.ftc.teamcode;
+
+import org.firstinspires.ftc.robotcore.external.Telemetry;
+
+/**
+ * Telemetry for control loops. The Driver Station only gets telemetry every 250ms (the
+ * transmission interval), but our loops used to format and send every line every cycle.
+ *
+ * Instead, each line gets a slot when the OpMode is set up. The loop stores plain numbers
+ * (or a constant String) in its slots, which costs next to nothing and doesn't allocate.
+ * update() only formats the lines and sends them once the transmission interval has passed.
+ *
+ *   int armSlot = loopTelemetry.addSlot("Arm Position", "%5.0f");
+ *   ...
+ *   loopTelemetry.set(armSlot, state.armPosition);    // every cycle
+ *   loopTelemetry.update();                           // every cycle, but only sends every 250ms
+ *
+ * A slot only shows up in the send after it was set. For things that only get set once in a while
+ * (like how the last drive ended), add a sticky slot instead, and it keeps showing its last value.
+ */
+public class ThrottledTelemetry {
+
+    private static final int MAX_SLOTS = 64;
+    private static final int MAX_VALUES = 4;
+
+    private final Telemetry telemetry;
+
+    private final String[] captions = new String[MAX_SLOTS];
+    private final String[] formats = new String[MAX_SLOTS];
+    private final double[][] values = new double[MAX_SLOTS][MAX_VALUES];
+    private final String[] texts = new String[MAX_SLOTS];
+    // Which slots were set since the last time we sent. Lines that weren't set aren't shown.
+    private final boolean[] touched = new boolean[MAX_SLOTS];
+    // Sticky slots stay touched once they're set
+    private final boolean[] sticky = new boolean[MAX_SLOTS];
+    private int slotCount = 0;
+
+    private long lastSendNanos = 0;
+
+    public ThrottledTelemetry(Telemetry telemetry) {
+        this.telemetry = telemetry;
+    }
+
+    /**
+     * @return The real telemetry, for things that only happen once (like during init).
+     */
+    public Telemetry getTelemetry() {
+        return telemetry;
+    }
+
+    /**
+     * Reserve a line. Do this once, during setup, not in the loop.
+     *
+     * @param caption The caption shown on the Driver Station.
+     * @param format  A String.format() format with one %f-style conversion per value,
+     *                or null for a line that shows text set with setText().
+     * @return The slot number to pass to set().
+     */
+    public int addSlot(String caption, String format) {
+        return addSlot(caption, format, false);
+    }
+
+    /**
+     * @param sticky True to keep showing the last value every send, even if it wasn't set again.
+     *               For lines that get set once per drive or turn, not every cycle.
+     */
+    public int addSlot(String caption, String format, boolean sticky) {
+        if (slotCount >= MAX_SLOTS) {
+            throw new IllegalStateException("Too many telemetry slots, increase MAX_SLOTS");
+        }
+        captions[slotCount] = caption;
+        formats[slotCount] = format;
+        this.sticky[slotCount] = sticky;
+        return slotCount++;
+    }
+
+    public void set(int slot, double value) {
+        values[slot][0] = value;
+        touched[slot] = true;
+    }
+
+    public void set(int slot, double value1, double value2) {
+        values[slot][0] = value1;
+        values[slot][1] = value2;
+        touched[slot] = true;
+    }
+
+    public void set(int slot, double value1, double value2, double value3) {
+        values[slot][0] = value1;
+        values[slot][1] = value2;
+        values[slot][2] = value3;
+        touched[slot] = true;
+    }
+
+    public void set(int slot, double value1, double value2, double value3, double value4) {
+        values[slot][0] = value1;
+        values[slot][1] = value2;
+        values[slot][2] = value3;
+        values[slot][3] = value4;
+        touched[slot] = true;
+    }
+
+    /**
+     * Use constant Strings (literals, or String.valueOf(boolean)) so nothing gets allocated in the loop.
+     */
+    public void setText(int slot, String text) {
+        texts[slot] = text;
+        touched[slot] = true;
+    }
+
+    /**
+     * @return True if the next call to update() will send. Use this to skip expensive telemetry work
+     * (like adding lines straight to getTelemetry()) on cycles where it won't be sent anyway.
+     */
+    public boolean isDue() {
+        long intervalNanos = telemetry.getMsTransmissionInterval() * 1_000_000L;
+        return System.nanoTime() - lastSendNanos >= intervalNanos;
+    }
+
+    /**
+     * Formats and sends every slot that was set (and every sticky slot that was ever set), if the transmission interval has passed. Otherwise does nothing.
+     *
+     * @return True if telemetry was sent.
+     */
+    public boolean update() {
+        if (!isDue()) return false;
+
+        for (int i = 0; i < slotCount; i++) {
+            if (!touched[i]) continue;
+            if (!sticky[i]) touched[i] = false;
+
+            if (formats[i] == null) {
+                telemetry.addData(captions[i], texts[i]);
+            } else {
+                double[] v = values[i];
+                telemetry.addData(captions[i], formats[i], v[0], v[1], v[2], v[3]);
+            }
+        }
+        telemetry.update();
+        lastSendNanos = System.nanoTime();
+        return true;
+    }
+}
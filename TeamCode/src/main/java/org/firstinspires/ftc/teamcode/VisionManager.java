@@ -0,0 +1,97 @@
+package org.firstinspires.ftc.teamcode;
+
+import android.util.Size;
+
+import com.qualcomm.robotcore.hardware.HardwareMap;
+
+import org.firstinspires.ftc.robotcore.external.hardware.camera.WebcamName;
+import org.firstinspires.ftc.vision.VisionPortal;
+
+/**
+ * Owns the camera for the autonomous, and makes sure it only works while we need it. Once the
+ * team prop decision is made, running FirstVisionProcessor on every frame just takes CPU away
+ * from the drive loop.
+ *
+ *  - findProp(): streaming, with FirstVisionProcessor on. This is how it starts, for init.
+ *  - idle(): the stream is stopped, but the camera stays open.
+ *
+ * Opening the camera takes a second or so, which is why idle() only stops the stream: going back
+ * to findProp() is quick. close() shuts the camera for good.
+ *
+ * Starting and stopping the stream only works in the right camera state (it can still be opening
+ * when the match starts), so the methods just say what's wanted, and update() does it once the
+ * camera is ready. Call update() every cycle; it doesn't wait for anything.
+ */
+public class VisionManager {
+
+    public static final int PROP = 0;
+    public static final int IDLE = 1;
+
+    static final String[] MODE_NAMES = {"Finding prop", "Idle"};
+
+    private final FirstVisionProcessor propProcessor;
+    private final VisionPortal visionPortal;
+    private int mode = PROP;
+
+    public VisionManager(HardwareMap hardwareMap) {
+        propProcessor = new FirstVisionProcessor();
+        visionPortal = new VisionPortal.Builder()
+                .setCamera(hardwareMap.get(WebcamName.class, "Webcam 1"))
+                .setCameraResolution(new Size(640, 480))
+                .addProcessor(propProcessor)
+                .build();
+    }
+
+    public void findProp() {
+        setMode(PROP);
+    }
+
+    public void idle() {
+        setMode(IDLE);
+    }
+
+    private void setMode(int mode) {
+        if (mode == this.mode) return;
+        this.mode = mode;
+        // Processors can be switched any time; it's only the stream that has to wait for the camera
+        visionPortal.setProcessorEnabled(propProcessor, mode == PROP);
+        update();
+    }
+
+    /**
+     * Starts or stops the stream to match the mode, if the camera is in a state where it can.
+     */
+    public void update() {
+        VisionPortal.CameraState cameraState = visionPortal.getCameraState();
+        if (mode == IDLE && cameraState == VisionPortal.CameraState.STREAMING) {
+            visionPortal.stopStreaming();
+        } else if (mode == PROP && cameraState == VisionPortal.CameraState.CAMERA_DEVICE_READY) {
+            visionPortal.resumeStreaming();
+        }
+    }
+
+    public int getMode() {
+        return mode;
+    }
+
+    /**
+     * @return A line for telemetry, like "Idle (CAMERA_DEVICE_READY)"
+     */
+    public String status() {
+        return MODE_NAMES[mode] + " (" + visionPortal.getCameraState() + ")";
+    }
+
+    public FirstVisionProcessor getPropProcessor() {
+        return propProcessor;
+    }
+
+    /**
+     * Closes the camera and frees the prop processor's Mats.
+     *
+     * @return The Mat tracker's report (see FirstVisionProcessor.release()).
+     */
+    public String close() {
+        visionPortal.close();
+        return propProcessor.release();
+    }
+}
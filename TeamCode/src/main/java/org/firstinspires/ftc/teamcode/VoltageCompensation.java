@@ -0,0 +1,70 @@
+package org.firstinspires.ftc.teamcode;
+
+/**
+ * Makes motor powers mean the same thing whatever the battery is at. A power of 0.5 is half the
+ * battery voltage, so on a fresh 13.5V battery the robot goes faster than on a tired 12V one.
+ * Scaling every power by NOMINAL / battery voltage makes it act like it's always at NOMINAL.
+ *
+ * Call update() once per cycle with the battery voltage from RobotState, and hand this to each
+ * CachingMotor with setVoltageCompensation(). The voltage is smoothed, since it dips for a moment
+ * every time the motors pull hard, and the motors would otherwise chase their own dips.
+ *
+ * Pure Java, so it can run on a laptop.
+ */
+public class VoltageCompensation {
+
+    static final double NOMINAL_VOLTAGE = 12.0;
+    // Below this the battery is nearly flat (or the reading is bad), so don't boost any further
+    static final double MIN_VOLTAGE = 9.0;
+    static final double FILTER_SECONDS = 0.5;      // time constant of the smoothing
+
+    private final double nominalVoltage;
+    private double voltage = Double.NaN;
+    private long lastNanos = 0;
+
+    public VoltageCompensation() {
+        this(NOMINAL_VOLTAGE);
+    }
+
+    public VoltageCompensation(double nominalVoltage) {
+        this.nominalVoltage = nominalVoltage;
+    }
+
+    /**
+     * @param batteryVoltage This cycle's reading. 0 or less (no sensor) is ignored.
+     * @param nowNanos       This cycle's time, like RobotState.timestampNanos.
+     */
+    public void update(double batteryVoltage, long nowNanos) {
+        if (batteryVoltage <= 0) return;
+        if (Double.isNaN(voltage)) {
+            voltage = batteryVoltage;
+        } else {
+            double dt = (nowNanos - lastNanos) / 1e9;
+            double alpha = dt / (FILTER_SECONDS + dt);
+            voltage += DriveControl.clip(alpha, 0, 1) * (batteryVoltage - voltage);
+        }
+        lastNanos = nowNanos;
+    }
+
+    /**
+     * @return The smoothed battery voltage, or NaN before the first reading.
+     */
+    public double getVoltage() {
+        return voltage;
+    }
+
+    /**
+     * @return What to multiply powers by. 1 until there's a reading.
+     */
+    public double getScale() {
+        if (Double.isNaN(voltage)) return 1;
+        return nominalVoltage / Math.max(voltage, MIN_VOLTAGE);
+    }
+
+    /**
+     * @return The power to send to get the effect of power at the nominal voltage, limited to +/- 1.
+     */
+    public double apply(double power) {
+        return DriveControl.clip(power * getScale(), -1, 1);
+    }
+}
@@ -23,6 +23,7 @@ package org.firstinspires.ftc.teamcode;
 
 import com.qualcomm.robotcore.eventloop.opmode.LinearOpMode;
 import com.qualcomm.robotcore.eventloop.opmode.TeleOp;
+import com.qualcomm.robotcore.util.RobotLog;
 
 import org.opencv.core.Core;
 import org.opencv.core.Mat;
@@ -89,11 +90,16 @@ public class skystoneBasedDetector extends LinearOpMode
         while (opModeIsActive())
         {
             telemetry.addData("Analysis", pipeline.getAnalysis());
+            telemetry.addData("Vision memory", pipeline.tracker.summary());
             telemetry.update();
 
             // Don't burn CPU cycles busy-looping in this sample
             sleep(50);
         }
+
+        // Stop the camera so no frame is using the pipeline's Mats, then free them and log any leaks
+        phoneCam.closeCameraDevice();
+        RobotLog.ii("skystoneBasedDetector", pipeline.release());
     }
 
     public static class SkystoneDeterminationPipeline extends OpenCvPipeline
@@ -162,9 +168,10 @@ public class skystoneBasedDetector extends LinearOpMode
         /*
          * Working variables
          */
+        final MatTracker tracker = new MatTracker("SkystoneDeterminationPipeline");
         Mat region1_CbCr, region2_CbCr, region3_CbCr;
-        Mat YCrCb = new Mat();
-        Mat CrCb = new Mat();
+        Mat YCrCb = tracker.create("YCrCb");
+        Mat CrCb = tracker.create("CrCb");
         int avg1, avg2, avg3;
 
         // Volatile since accessed by OpMode thread w/o synchronization
@@ -206,14 +213,20 @@ public class skystoneBasedDetector extends LinearOpMode
              * buffer. Any changes to the child affect the parent, and the
              * reverse also holds true.
              */
-            region1_CbCr = CrCb.submat(new Rect(region1_pointA, region1_pointB));
-            region2_CbCr = CrCb.submat(new Rect(region2_pointA, region2_pointB));
-            region3_CbCr = CrCb.submat(new Rect(region3_pointA, region3_pointB));
+            // init() runs again if the camera is reopened, so let go of the old ones first
+            tracker.release(region1_CbCr);
+            tracker.release(region2_CbCr);
+            tracker.release(region3_CbCr);
+            region1_CbCr = tracker.submat("region1_CbCr", CrCb, new Rect(region1_pointA, region1_pointB));
+            region2_CbCr = tracker.submat("region2_CbCr", CrCb, new Rect(region2_pointA, region2_pointB));
+            region3_CbCr = tracker.submat("region3_CbCr", CrCb, new Rect(region3_pointA, region3_pointB));
         }
 
         @Override
         public Mat processFrame(Mat input)
         {
+            tracker.startFrame();
+
             /*
              * Overview of what we're doing:
              *
@@ -370,5 +383,19 @@ public class skystoneBasedDetector extends LinearOpMode
         {
             return position;
         }
+
+        /*
+         * Call once the camera is closed. Returns the tracker's report, listing
+         * any Mat that still hadn't been released.
+         */
+        public String release()
+        {
+            tracker.release(region1_CbCr);
+            tracker.release(region2_CbCr);
+            tracker.release(region3_CbCr);
+            tracker.release(YCrCb);
+            tracker.release(CrCb);
+            return tracker.releaseAll();
+        }
     }
 }
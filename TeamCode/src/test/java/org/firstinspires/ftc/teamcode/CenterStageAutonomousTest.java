@@ -0,0 +1,214 @@
+package org.firstinspires.ftc.teamcode;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import com.qualcomm.robotcore.hardware.Gamepad;
+
+import org.firstinspires.ftc.robotcore.external.Telemetry;
+import org.junit.Test;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Runs the whole autonomous on a SimRobot (see CenterStageAutonomous.simulate()), in simulated
+ * time, and checks that the robot goes to the right spike mark, delivers at the right place on
+ * the backdrop and parks in the right place, inside the 30 seconds.
+ * Run with:  ./gradlew :TeamCode:testDebugUnitTest
+ *
+ * The places are field coordinates worked out by hand from the distances in buildRoute(), with
+ * the robot starting at 0, 0 facing 0 (x is forward, y is to the left, degrees CCW).
+ */
+public class CenterStageAutonomousTest {
+
+    // Drives come up about 3% short (moveCounts()'s moveCompensation was tuned on the real robot),
+    // so the long drives along the wall (y) can be a couple of inches short. Across the field (x)
+    // it's only the short drives, and it has to be tight enough to tell the backdrop spots apart,
+    // which are only 2 inches apart for the middle and right spike marks.
+    static final double X_TOLERANCE = 1.5;          // inches
+    static final double Y_TOLERANCE = 3.0;          // inches
+    static final double HEADING_TOLERANCE = 2.0;    // degrees
+    // A match should take well under a second on a laptop
+    static final double MIN_SPEEDUP = 10;
+
+    // Where the purple pixel gets pushed: 14 back, then 9.5 back along 45 for the left and right marks
+    static final double[] LEFT_SPIKE_MARK = {-20.7, -6.7, 45};
+    static final double[] MIDDLE_SPIKE_MARK = {-26, 0, 0};
+    static final double[] RIGHT_SPIKE_MARK = {-20.7, 6.7, -45};
+
+    @Test
+    public void leftSpikeMark() {
+        // The init menu defaults: blue, far, yellow pixel (which parks in the triangle)
+        Run run = run(FirstVisionProcessor.Selected.LEFT, false, false, true, false);
+        checkRun(run);
+        checkPose("spike mark", LEFT_SPIKE_MARK, run.autonomous.spikeMark);
+        checkDelivered(run, new double[]{-21, -89, 90});
+        checkPose("park", new double[]{-50, -94, 90}, run.endPose());
+    }
+
+    @Test
+    public void middleSpikeMark() {
+        Run run = run(FirstVisionProcessor.Selected.MIDDLE, false, false, true, false);
+        checkRun(run);
+        checkPose("spike mark", MIDDLE_SPIKE_MARK, run.autonomous.spikeMark);
+        checkDelivered(run, new double[]{-27, -89, 90});
+        checkPose("park", new double[]{-52, -94, 90}, run.endPose());
+    }
+
+    @Test
+    public void rightSpikeMark() {
+        Run run = run(FirstVisionProcessor.Selected.RIGHT, false, false, true, false);
+        checkRun(run);
+        checkPose("spike mark", RIGHT_SPIKE_MARK, run.autonomous.spikeMark);
+        checkDelivered(run, new double[]{-29, -89, 90});
+        checkPose("park", new double[]{-50, -94, 90}, run.endPose());
+    }
+
+    @Test
+    public void redCloseIsMirrored() {
+        // The spike marks aren't mirrored, but everything after them is, and on red the left
+        // spike mark goes with the far AprilTag
+        Run run = run(FirstVisionProcessor.Selected.LEFT, true, true, true, false);
+        checkRun(run);
+        checkPose("spike mark", LEFT_SPIKE_MARK, run.autonomous.spikeMark);
+        checkDelivered(run, new double[]{-29, 39, -90});
+        checkPose("park", new double[]{-50, 44, -90}, run.endPose());
+    }
+
+    @Test
+    public void purpleOnlyParksInCorner() {
+        // Without the yellow pixel the planner picks the route that skips the backdrop
+        Run run = run(FirstVisionProcessor.Selected.RIGHT, false, true, false, true);
+        checkRun(run);
+        checkPose("spike mark", RIGHT_SPIKE_MARK, run.autonomous.spikeMark);
+        assertEquals("Deliveries", 0, run.autonomous.deliveries.size());
+        checkPose("park", new double[]{-1, -44, 90}, run.endPose());
+    }
+
+    @Test
+    public void sameEveryRun() {
+        SimRobot first = run(FirstVisionProcessor.Selected.MIDDLE, false, false, true, false).robot;
+        SimRobot second = run(FirstVisionProcessor.Selected.MIDDLE, false, false, true, false).robot;
+
+        assertEquals(first.getTime(), second.getTime(), 0);
+        assertEquals(first.getX(), second.getX(), 0);
+        assertEquals(first.getY(), second.getY(), 0);
+        assertEquals(first.getHeading(), second.getHeading(), 0);
+    }
+
+    private static void checkRun(Run run) {
+        assertNotNull("No route was planned", run.autonomous.getPlannedRoute());
+
+        // Finished the route before the match ended (the loops stop at AUTONOMOUS_SECONDS)
+        double simulatedSeconds = run.robot.getTime();
+        assertTrue("Route took " + simulatedSeconds + " s", simulatedSeconds < CenterStageAutonomous.AUTONOMOUS_SECONDS);
+        assertTrue("Ran " + simulatedSeconds + " simulated seconds in " + run.realSeconds + " s",
+                run.realSeconds * MIN_SPEEDUP < simulatedSeconds);
+    }
+
+    private static void checkDelivered(Run run, double[] expected) {
+        assertEquals("Deliveries", 1, run.autonomous.deliveries.size());
+        checkPose("backdrop", expected, run.autonomous.deliveries.get(0));
+    }
+
+    /**
+     * @param expected {x, y, heading in degrees}
+     */
+    private static void checkPose(String where, double[] expected, double[] actual) {
+        assertEquals(where + " x", expected[0], actual[0], X_TOLERANCE);
+        assertEquals(where + " y", expected[1], actual[1], Y_TOLERANCE);
+        assertEquals(where + " heading", 0, DriveControl.headingError(expected[2], actual[2]), HEADING_TOLERANCE);
+    }
+
+    private static double[] pose(SimRobot robot) {
+        return new double[]{robot.getX(), robot.getY(), Math.toDegrees(robot.getHeading())};
+    }
+
+    /**
+     * The autonomous, remembering where the robot was when it pushed the purple pixel (the
+     * furthest back it got while still facing the spike marks) and each time it delivered.
+     */
+    private static class RecordingAutonomous extends CenterStageAutonomous {
+        private final SimRobot robot;
+        double[] spikeMark = {0, 0, 0};
+        final List<double[]> deliveries = new ArrayList<>();
+
+        RecordingAutonomous(SimRobot robot) {
+            this.robot = robot;
+        }
+
+        @Override
+        protected void readState() {
+            super.readState();
+            if (robot.getX() < spikeMark[0] && Math.abs(Math.toDegrees(robot.getHeading())) < 60) {
+                spikeMark = pose(robot);
+            }
+        }
+
+        @Override
+        public void deliverPixel() {
+            deliveries.add(pose(robot));
+            super.deliverPixel();
+        }
+    }
+
+    private static class Run {
+        final SimRobot robot = new SimRobot();
+        final RecordingAutonomous autonomous = new RecordingAutonomous(robot);
+        double realSeconds;
+
+        double[] endPose() {
+            return pose(robot);
+        }
+    }
+
+    /**
+     * Runs the autonomous with the init menu set to these.
+     */
+    private static Run run(FirstVisionProcessor.Selected selected, boolean isRed, boolean isClose,
+                           boolean scoreYellowPixel, boolean parkInCorner) {
+        Run run = new Run();
+        run.autonomous.simulate(run.robot, selected);
+        run.autonomous.isRed = isRed;
+        run.autonomous.isFar = !isClose;
+        run.autonomous.scoreYellowPixel = scoreYellowPixel;
+        run.autonomous.parkInCorner = parkInCorner;
+        run.autonomous.telemetry = nullTelemetry();
+        run.autonomous.gamepad1 = new Gamepad();
+        run.autonomous.gamepad2 = new Gamepad();
+
+        long startNanos = System.nanoTime();
+        run.autonomous.runOpMode();
+        run.realSeconds = (System.nanoTime() - startNanos) / 1e9;
+        return run;
+    }
+
+    /**
+     * A Telemetry that throws everything away. The SDK's own one needs a Driver Station to send to.
+     * Anything that returns an interface (like addData()'s Item) gets another one of these.
+     */
+    private static Telemetry nullTelemetry() {
+        return (Telemetry) nothing(Telemetry.class);
+    }
+
+    private static Object nothing(Class<?> type) {
+        return Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{type}, new InvocationHandler() {
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) {
+                Class<?> returnType = method.getReturnType();
+                if (returnType == boolean.class) return false;
+                if (returnType == int.class) return 0;
+                if (returnType == long.class) return 0L;
+                if (returnType == double.class) return 0.0;
+                if (returnType == float.class) return 0f;
+                if (returnType.isInterface()) return nothing(returnType);
+                return null;
+            }
+        });
+    }
+}